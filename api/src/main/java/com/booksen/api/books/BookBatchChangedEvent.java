@@ -0,0 +1,23 @@
+package com.booksen.api.books;
+
+import java.util.List;
+
+/*
+ * Published once for a write that touched many books (batch create, bulk delete or set-author, an import batch)
+ * instead of one BookChangedEvent per book, so listeners update their shared state once per batch.
+ * saved holds the new state of the written books, deleted the ids of the removed ones.
+ */
+public record BookBatchChangedEvent(List<Books> saved, List<String> deleted) {
+
+    public static BookBatchChangedEvent saved(List<Books> books) {
+        return new BookBatchChangedEvent(List.copyOf(books), List.of());
+    }
+
+    public static BookBatchChangedEvent deleted(List<String> ids) {
+        return new BookBatchChangedEvent(List.of(), List.copyOf(ids));
+    }
+
+    public boolean isEmpty() {
+        return saved.isEmpty() && deleted.isEmpty();
+    }
+}
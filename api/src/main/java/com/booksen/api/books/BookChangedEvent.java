@@ -0,0 +1,29 @@
+package com.booksen.api.books;
+
+/*
+ * Published after a book is written, either by this node or by another replica (relayed from the change stream).
+ * book is the new state of the document and is null when it was deleted.
+ * An event without id means changes may have been missed and every book must be considered stale.
+ */
+public record BookChangedEvent(String id, Books book) {
+
+    public static BookChangedEvent saved(Books book) {
+        return new BookChangedEvent(book.getId(), book);
+    }
+
+    public static BookChangedEvent deleted(String id) {
+        return new BookChangedEvent(id, null);
+    }
+
+    public static BookChangedEvent all() {
+        return new BookChangedEvent(null, null);
+    }
+
+    public boolean isDeleted() {
+        return id != null && book == null;
+    }
+
+    public boolean isWholeCollection() {
+        return id == null;
+    }
+}
@@ -1,11 +1,14 @@
 package com.booksen.api.books;
 
+import com.booksen.api.model.CoverStatus;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.index.TextIndexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
@@ -14,15 +17,26 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-@Document(collection = "books")
+// Text index uses no stemming language: names and authors are proper nouns, case and diacritics are still folded
+@Document(collection = "books", language = "none")
+@CompoundIndex(name = "createdAt_id_idx", def = "{'createdAt': 1, '_id': 1}")
+@CompoundIndex(name = "author_createdAt_id_idx", def = "{'author': 1, 'createdAt': 1, '_id': 1}")
 public class Books {
     @Id
     private String id;
 
     @Indexed(unique = true)
+    @TextIndexed(weight = 3)
     private String name;
+    @TextIndexed
     private String description;
     private String cover;
+    // Only pending covers are looked up, by the ingestion retry sweep
+    @Indexed(sparse = true)
+    private CoverStatus coverStatus;
+    // Node holding the staged file of a PENDING cover, only that node can ingest it
+    private String coverNodeId;
+    @TextIndexed(weight = 2)
     private String author;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
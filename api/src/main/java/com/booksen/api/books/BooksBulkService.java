@@ -0,0 +1,371 @@
+package com.booksen.api.books;
+
+import com.booksen.api.dto.books.BatchItemResultDTO;
+import com.booksen.api.dto.books.BatchItemStatus;
+import com.booksen.api.dto.books.BulkDeleteBooksDTO;
+import com.booksen.api.dto.books.BulkResultDTO;
+import com.booksen.api.dto.books.BulkSetAuthorDTO;
+import com.booksen.api.dto.books.CreateBooksBatchDTO;
+import com.booksen.api.dto.books.CreateUpdateBookDTO;
+import com.booksen.api.helpers.BooksHelper;
+import com.booksen.api.helpers.FileServices;
+import com.booksen.api.model.Response;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+
+// Write operations on many books at once, each one answered with a single round trip to Mongo
+@Service
+@Slf4j
+public class BooksBulkService {
+    private static final int DUPLICATE_KEY = 11000;
+    // Keeps each $in list, and the command carrying it, at a reasonable size
+    private static final int IDS_PER_QUERY = 1000;
+
+    private final BooksRepository booksRepository;
+    private final BooksHelper booksHelper;
+    private final FileServices fileServices;
+    private final Validator validator;
+    private final CatalogVersion catalogVersion;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ThreadPoolTaskExecutor mediaTaskExecutor;
+    private final CoverIngestionService coverIngestionService;
+    private final int maxBatchSize;
+    private final int maxIds;
+
+    public BooksBulkService(
+            BooksRepository booksRepository,
+            BooksHelper booksHelper,
+            FileServices fileServices,
+            Validator validator,
+            CatalogVersion catalogVersion,
+            ApplicationEventPublisher eventPublisher,
+            @Qualifier("mediaTaskExecutor") ThreadPoolTaskExecutor mediaTaskExecutor,
+            CoverIngestionService coverIngestionService,
+            @Value("${application.books.batch.max-size}") int maxBatchSize,
+            @Value("${application.books.batch.max-ids}") int maxIds
+    ) {
+        this.booksRepository = booksRepository;
+        this.booksHelper = booksHelper;
+        this.fileServices = fileServices;
+        this.validator = validator;
+        this.catalogVersion = catalogVersion;
+        this.eventPublisher = eventPublisher;
+        this.mediaTaskExecutor = mediaTaskExecutor;
+        this.coverIngestionService = coverIngestionService;
+        this.maxBatchSize = maxBatchSize;
+        this.maxIds = maxIds;
+    }
+
+    /*
+     * Every item gets its own outcome, a bad item never aborts the rest of the batch:
+     * validation first, then one $in query for duplicates, covers staged in parallel and a single unordered insert.
+     */
+    public Response<List<BatchItemResultDTO>> createBatch(CreateBooksBatchDTO batch) {
+        List<CreateUpdateBookDTO> items = batch.getBooks();
+        if (items == null || items.isEmpty()) return Response.badRequest("You need to provide at least one book");
+        if (items.size() > maxBatchSize) return Response.badRequest("A batch cannot contain more than " + maxBatchSize + " books");
+
+        BatchItemResultDTO[] results = new BatchItemResultDTO[items.size()];
+        List<Integer> accepted = new ArrayList<>();
+        Set<String> namesInBatch = new HashSet<>();
+
+        for (int i = 0; i < items.size(); i++) {
+            CreateUpdateBookDTO dto = items.get(i);
+            if (dto == null) {
+                results[i] = result(i, null, BatchItemStatus.INVALID, "Empty item");
+                continue;
+            }
+
+            booksHelper.prepareForValidation(dto);
+            String error = validate(dto);
+            if (error != null) {
+                results[i] = result(i, dto.getName(), BatchItemStatus.INVALID, error);
+            } else if (!namesInBatch.add(dto.getName())) {
+                results[i] = result(i, dto.getName(), BatchItemStatus.DUPLICATE, "Book appears more than once in the batch.");
+            } else {
+                accepted.add(i);
+            }
+        }
+
+        Set<String> existingNames = accepted.isEmpty() ? Set.of()
+                : booksHelper.findExistingNames(accepted.stream().map(items::get).toList());
+        accepted.removeIf(i -> {
+            if (!existingNames.contains(items.get(i).getName())) return false;
+            results[i] = result(i, items.get(i).getName(), BatchItemStatus.DUPLICATE, "Book already exists.");
+            return true;
+        });
+
+        Map<Integer, CompletableFuture<String>> covers = new LinkedHashMap<>();
+        for (int i : accepted) {
+            MultipartFile cover = items.get(i).getCover();
+            covers.put(i, CompletableFuture.supplyAsync(() -> saveCover(cover), mediaTaskExecutor));
+        }
+
+        List<Integer> insertedIndexes = new ArrayList<>();
+        List<Books> toInsert = new ArrayList<>();
+        covers.forEach((i, cover) -> {
+            try {
+                Books book = booksHelper.toEntity(items.get(i), cover.join());
+                // Ids are assigned here since a bulk insert does not report them back
+                book.setId(new ObjectId().toHexString());
+                toInsert.add(book);
+                insertedIndexes.add(i);
+            } catch (CompletionException e) {
+                log.error("Error storing cover of batch item {}: {}", i, e.getCause().getMessage());
+                results[i] = result(i, items.get(i).getName(), BatchItemStatus.FAILED, "Failed to store the cover");
+            }
+        });
+
+        Map<Integer, WriteFailure> failures = insert(toInsert);
+
+        List<Books> created = new ArrayList<>();
+        for (int k = 0; k < toInsert.size(); k++) {
+            int i = insertedIndexes.get(k);
+            Books book = toInsert.get(k);
+            WriteFailure failure = failures.get(k);
+
+            if (failure == null) {
+                results[i] = BatchItemResultDTO.builder()
+                        .index(i)
+                        .name(book.getName())
+                        .status(BatchItemStatus.CREATED)
+                        .id(book.getId())
+                        .build();
+                created.add(book);
+            } else {
+                releaseCover(book.getCover());
+                results[i] = failure.duplicate()
+                        ? result(i, book.getName(), BatchItemStatus.DUPLICATE, "Book already exists.")
+                        : result(i, book.getName(), BatchItemStatus.FAILED, failure.message());
+            }
+        }
+
+        if (!created.isEmpty()) {
+            catalogVersion.bump();
+            eventPublisher.publishEvent(BookBatchChangedEvent.saved(created));
+            created.forEach(coverIngestionService::submit);
+        }
+        return new Response<>(
+                !created.isEmpty() ? HttpStatus.CREATED.value() : HttpStatus.BAD_REQUEST.value(),
+                Arrays.asList(results),
+                String.format("Created %d of %d Books", created.size(), items.size())
+        );
+    }
+
+    /*
+     * Deletes the listed books, or every book of an author by pages of IDS_PER_QUERY until none is left,
+     * so memory stays bounded and books added meanwhile go too.
+     * Each book is removed with its own findAndRemove: a deleteMany does not tell which documents it removed,
+     * and releasing the covers of books a concurrent delete removed would count their references down twice.
+     * Covers are removed afterwards by background tasks, the response does not wait for the disk.
+     */
+    public Response<BulkResultDTO> deleteBatch(BulkDeleteBooksDTO request) {
+        boolean byIds = request.getIds() != null && !request.getIds().isEmpty();
+        boolean byAuthor = request.getAuthor() != null && !request.getAuthor().isBlank();
+        if (byIds == byAuthor) return Response.badRequest("You need to provide either ids or an author");
+        if (byIds && request.getIds().size() > maxIds) return Response.badRequest("A request cannot target more than " + maxIds + " books");
+
+        List<BatchItemResultDTO> failures = new ArrayList<>();
+        long matched = 0;
+        long deleted = 0;
+        if (byIds) {
+            List<String> ids = findTargets(request.getIds(), failures).stream().map(Books::getId).toList();
+            matched = ids.size();
+            for (List<String> chunk : chunks(ids)) deleted += remove(chunk, null);
+        } else {
+            List<Books> page;
+            while (!(page = booksRepository.findCoversByAuthor(request.getAuthor(), IDS_PER_QUERY)).isEmpty()) {
+                matched += page.size();
+                deleted += remove(page.stream().map(Books::getId).toList(), request.getAuthor());
+            }
+        }
+
+        log.info("Bulk deleted {} Books", deleted);
+        return Response.ok(
+                BulkResultDTO.builder().matched(matched).modified(deleted).failures(failures).build(),
+                String.format("Deleted %d Books", deleted)
+        );
+    }
+
+    // Returns the number of books this call removed, the others were removed concurrently or no longer match author
+    private long remove(List<String> ids, String author) {
+        List<Books> removed = new ArrayList<>();
+        for (String id : ids) {
+            Books book = booksRepository.removeCover(id, author);
+            if (book != null) removed.add(book);
+        }
+        afterDelete(removed);
+        return removed.size();
+    }
+
+    private void afterDelete(List<Books> removed) {
+        if (removed.isEmpty()) return;
+        catalogVersion.bump();
+        eventPublisher.publishEvent(BookBatchChangedEvent.deleted(removed.stream().map(Books::getId).toList()));
+
+        List<String> covers = removed.stream().map(Books::getCover).filter(Objects::nonNull).toList();
+        if (!covers.isEmpty()) mediaTaskExecutor.execute(() -> covers.forEach(this::releaseCover));
+    }
+
+    /*
+     * Sets the author of the listed books, or renames an author on all of their books, with one updateMany per IDS_PER_QUERY ids.
+     * Renamed books stop matching fromAuthor, so the rename reads the next page until none is left.
+     */
+    public Response<BulkResultDTO> setAuthor(BulkSetAuthorDTO request) {
+        boolean byIds = request.getIds() != null && !request.getIds().isEmpty();
+        boolean byAuthor = request.getFromAuthor() != null && !request.getFromAuthor().isBlank();
+        if (byIds == byAuthor) return Response.badRequest("You need to provide either ids or fromAuthor");
+        if (byIds && request.getIds().size() > maxIds) return Response.badRequest("A request cannot target more than " + maxIds + " books");
+
+        Set<ConstraintViolation<CreateUpdateBookDTO>> violations = validator.validateValue(CreateUpdateBookDTO.class, "author", request.getAuthor());
+        if (!violations.isEmpty()) {
+            return Response.badRequest(violations.stream().map(ConstraintViolation::getMessage).sorted().collect(Collectors.joining("; ")));
+        }
+
+        if (byAuthor && request.getFromAuthor().equals(request.getAuthor())) return Response.badRequest("fromAuthor and author are the same");
+
+        List<BatchItemResultDTO> failures = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        long matched = 0;
+        long modified = 0;
+        if (byIds) {
+            List<String> ids = findTargets(request.getIds(), failures).stream().map(Books::getId).toList();
+            for (List<String> chunk : chunks(ids)) {
+                long updated = booksRepository.updateAuthor(chunk, request.getAuthor(), now);
+                afterAuthorUpdate(chunk, updated);
+                modified += updated;
+            }
+            matched = ids.size();
+        } else {
+            List<Books> page;
+            while (!(page = booksRepository.findCoversByAuthor(request.getFromAuthor(), IDS_PER_QUERY)).isEmpty()) {
+                List<String> ids = page.stream().map(Books::getId).toList();
+                long updated = booksRepository.updateAuthor(ids, request.getAuthor(), now);
+                afterAuthorUpdate(ids, updated);
+                matched += ids.size();
+                modified += updated;
+            }
+        }
+
+        log.info("Bulk updated the author of {} Books", modified);
+        return Response.ok(
+                BulkResultDTO.builder().matched(matched).modified(modified).failures(failures).build(),
+                String.format("Updated %d Books", modified)
+        );
+    }
+
+    // Caches and the autocomplete index need the full books, read back once per chunk
+    private void afterAuthorUpdate(List<String> ids, long modified) {
+        if (modified == 0) return;
+        catalogVersion.bump();
+        eventPublisher.publishEvent(BookBatchChangedEvent.saved(booksRepository.findAllById(ids)));
+    }
+
+    // Ids and covers of the requested books that exist, every missing id is reported once
+    private List<Books> findTargets(List<String> requestedIds, List<BatchItemResultDTO> failures) {
+        List<String> distinctIds = requestedIds.stream().filter(Objects::nonNull).distinct().toList();
+        List<Books> found = new ArrayList<>();
+        for (List<String> chunk : chunks(distinctIds)) found.addAll(booksRepository.findCoversByIds(chunk));
+
+        Set<String> foundIds = found.stream().map(Books::getId).collect(Collectors.toSet());
+        Set<String> reported = new HashSet<>();
+        for (int i = 0; i < requestedIds.size(); i++) {
+            String id = requestedIds.get(i);
+            if (foundIds.contains(id) || !reported.add(id)) continue;
+            failures.add(BatchItemResultDTO.builder()
+                    .index(i)
+                    .id(id)
+                    .status(BatchItemStatus.NOT_FOUND)
+                    .message("Books not found")
+                    .build());
+        }
+        return found;
+    }
+
+    private static List<List<String>> chunks(List<String> ids) {
+        List<List<String>> chunks = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += IDS_PER_QUERY) {
+            chunks.add(ids.subList(from, Math.min(from + IDS_PER_QUERY, ids.size())));
+        }
+        return chunks;
+    }
+
+    // Failed documents keyed by their position in the insert list
+    private Map<Integer, WriteFailure> insert(List<Books> books) {
+        try {
+            booksRepository.insertUnordered(books);
+            return Map.of();
+        } catch (BulkOperationException e) {
+            return e.getErrors().stream().collect(Collectors.toMap(
+                    error -> error.getIndex(),
+                    error -> new WriteFailure(error.getCode() == DUPLICATE_KEY, error.getMessage())
+            ));
+        } catch (DataAccessException e) {
+            log.error("Error inserting batch of Books: {}", e.getMessage(), e);
+            Map<Integer, WriteFailure> failures = new HashMap<>();
+            for (int k = 0; k < books.size(); k++) {
+                failures.put(k, new WriteFailure(false, "Error creating Books: " + e.getMessage()));
+            }
+            return failures;
+        }
+    }
+
+    private String validate(CreateUpdateBookDTO dto) {
+        Set<ConstraintViolation<CreateUpdateBookDTO>> violations = validator.validate(dto);
+        if (!violations.isEmpty()) {
+            return violations.stream()
+                    .map(v -> v.getPropertyPath() + ": " + v.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining("; "));
+        }
+
+        Response<Object> fileValidation = fileServices.validateFile(dto.getCover());
+        return fileValidation != null ? fileValidation.getMessage() : null;
+    }
+
+    private String saveCover(MultipartFile cover) {
+        try {
+            return fileServices.stageFile(cover);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void releaseCover(String cover) {
+        try {
+            fileServices.releaseImage(cover);
+        } catch (IOException e) {
+            log.warn("Could not delete cover {}: {}", cover, e.getMessage());
+        }
+    }
+
+    private record WriteFailure(boolean duplicate, String message) {}
+
+    private BatchItemResultDTO result(int index, String name, BatchItemStatus status, String message) {
+        return BatchItemResultDTO.builder()
+                .index(index)
+                .name(name)
+                .status(status)
+                .message(message)
+                .build();
+    }
+}
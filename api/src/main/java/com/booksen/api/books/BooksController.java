@@ -1,19 +1,30 @@
 package com.booksen.api.books;
 
 
+import com.booksen.api.dto.books.BatchItemResultDTO;
 import com.booksen.api.dto.books.BookResponseDTO;
+import com.booksen.api.dto.books.BookSuggestionsDTO;
+import com.booksen.api.dto.books.BookSummaryDTO;
+import com.booksen.api.dto.books.BulkDeleteBooksDTO;
+import com.booksen.api.dto.books.BulkResultDTO;
+import com.booksen.api.dto.books.BulkSetAuthorDTO;
+import com.booksen.api.dto.books.CreateBooksBatchDTO;
 import com.booksen.api.dto.books.CreateUpdateBookDTO;
 import com.booksen.api.model.Response;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.core.io.Resource;
-import org.springframework.http.HttpHeaders;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.io.IOException;
 import java.time.LocalDate;
 import java.util.List;
 
@@ -22,33 +33,98 @@ import java.util.List;
 @RequestMapping("/api/v1/books")
 @Slf4j
 public class BooksController {
+    // Browsers keep the body but check the ETag on every use
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
+
     private final BooksService booksService;
+    private final BooksBulkService booksBulkService;
 
     @GetMapping("/{id}")
-    public ResponseEntity<Response<BookResponseDTO>> getSubscriptionById(@PathVariable String id) {
+    public ResponseEntity<Response<BookResponseDTO>> getSubscriptionById(@PathVariable String id, WebRequest request) {
         Response<BookResponseDTO> response = booksService.getById(id);
-        return ResponseEntity.status(response.getStatus()).body(response);
+        if (response.getStatus() != HttpStatus.OK.value()) {
+            return ResponseEntity.status(response.getStatus()).body(response);
+        }
+
+        String eTag = booksService.getETag(response.getData());
+        if (request.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).cacheControl(REVALIDATE).build();
+        }
+        return ResponseEntity.status(response.getStatus()).eTag(eTag).cacheControl(REVALIDATE).body(response);
     }
 
     @GetMapping
-    public ResponseEntity<Response<List<BookResponseDTO>>> getAllBooks() {
-        Response<List<BookResponseDTO>> response = booksService.getAll();
-        return ResponseEntity.status(response.getStatus()).body(response);
+    public ResponseEntity<Response<List<BookResponseDTO>>> getAllBooks(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            WebRequest request) {
+        String eTag = booksService.getPageETag("books", cursor, limit);
+        if (request.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).cacheControl(REVALIDATE).build();
+        }
+
+        Response<List<BookResponseDTO>> response = booksService.getPage(cursor, limit);
+        return ResponseEntity.status(response.getStatus()).eTag(eTag).cacheControl(REVALIDATE).body(response);
     }
 
-    @GetMapping("/cover/{filename}")
-    public ResponseEntity<Object> getCoverBook(@PathVariable String filename) {
-        Response<Object> response = booksService.getBookCover(filename);
-        if (response.getStatus() != HttpStatus.OK.value()) {
-            return ResponseEntity.status(response.getStatus()).body(response);
+    @GetMapping("/summary")
+    public ResponseEntity<Response<List<BookSummaryDTO>>> getBooksSummary(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            WebRequest request) {
+        String eTag = booksService.getPageETag("summary", cursor, limit);
+        if (request.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).cacheControl(REVALIDATE).build();
         }
 
-        Resource resource = (Resource) response.getData();
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.IMAGE_JPEG);
-        headers.setContentDispositionFormData("inline", resource.getFilename());
+        Response<List<BookSummaryDTO>> response = booksService.getSummaryPage(cursor, limit);
+        return ResponseEntity.status(response.getStatus()).eTag(eTag).cacheControl(REVALIDATE).body(response);
+    }
+
+    @GetMapping("/filter")
+    public ResponseEntity<Response<List<BookResponseDTO>>> filterBooks(
+            @RequestParam(required = false) List<String> authors,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        Response<List<BookResponseDTO>> response = booksService.filter(authors, from, to, cursor, limit);
+        return ResponseEntity.status(response.getStatus()).body(response);
+    }
+
+    @GetMapping("/search")
+    public ResponseEntity<Response<List<BookResponseDTO>>> searchBooks(
+            @RequestParam String q,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        Response<List<BookResponseDTO>> response = booksService.search(q, cursor, limit);
+        return ResponseEntity.status(response.getStatus()).body(response);
+    }
+
+    @GetMapping("/suggest")
+    public ResponseEntity<Response<BookSuggestionsDTO>> suggestBooks(
+            @RequestParam String prefix,
+            @RequestParam(required = false) Integer limit) {
+        Response<BookSuggestionsDTO> response = booksService.suggest(prefix, limit);
+        return ResponseEntity.status(response.getStatus()).body(response);
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void exportBooks(HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        booksService.exportAll(response.getOutputStream());
+    }
 
-        return ResponseEntity.status(response.getStatus()).headers(headers).body(resource);
+    @GetMapping("/cover/{filename}")
+    public void getCoverBook(
+            @PathVariable String filename,
+            @RequestParam(name = "w", required = false) Integer width,
+            @RequestParam(name = "h", required = false) Integer height,
+            @RequestParam(required = false) String size,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        booksService.getBookCover(filename, width, height, size, request, response);
     }
 
     @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
@@ -57,6 +133,24 @@ public class BooksController {
         return ResponseEntity.status(response.getStatus()).body(response);
     }
 
+    @PostMapping(value = "/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<Response<List<BatchItemResultDTO>>> createBooksBatch(@ModelAttribute CreateBooksBatchDTO batch) {
+        Response<List<BatchItemResultDTO>> response = booksBulkService.createBatch(batch);
+        return ResponseEntity.status(response.getStatus()).body(response);
+    }
+
+    @PostMapping("/batch/delete")
+    public ResponseEntity<Response<BulkResultDTO>> deleteBooksBatch(@RequestBody BulkDeleteBooksDTO request) {
+        Response<BulkResultDTO> response = booksBulkService.deleteBatch(request);
+        return ResponseEntity.status(response.getStatus()).body(response);
+    }
+
+    @PatchMapping("/batch/author")
+    public ResponseEntity<Response<BulkResultDTO>> setBooksAuthor(@RequestBody BulkSetAuthorDTO request) {
+        Response<BulkResultDTO> response = booksBulkService.setAuthor(request);
+        return ResponseEntity.status(response.getStatus()).body(response);
+    }
+
     @PutMapping(value = "/{id}", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<Response<Object>> updateBooks(
             @PathVariable String id,
@@ -65,6 +159,13 @@ public class BooksController {
         return ResponseEntity.status(response.getStatus()).body(response);
     }
 
+    // Raw image body (not multipart), streamed to storage; Content-Type is ignored in favour of the bytes
+    @PutMapping("/{id}/cover")
+    public ResponseEntity<Response<Object>> replaceCover(@PathVariable String id, HttpServletRequest request) throws IOException {
+        Response<Object> response = booksService.replaceCover(id, request.getInputStream(), request.getContentLengthLong());
+        return ResponseEntity.status(response.getStatus()).body(response);
+    }
+
     @DeleteMapping("/{id}")
     public ResponseEntity<Response<Object>> deleteBooks(@PathVariable String id) {
         Response<Object> response = booksService.delete(id);
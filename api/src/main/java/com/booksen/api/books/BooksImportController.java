@@ -0,0 +1,38 @@
+package com.booksen.api.books;
+
+import com.booksen.api.dto.books.ImportJobDTO;
+import com.booksen.api.model.Response;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+
+@AllArgsConstructor
+@RestController
+@RequestMapping("/api/v1/books/import")
+@Slf4j
+public class BooksImportController {
+    private final BooksImportService booksImportService;
+
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<Response<ImportJobDTO>> importBooks(@RequestParam("file") MultipartFile file) throws IOException {
+        Response<ImportJobDTO> response = booksImportService.submit(file);
+        return ResponseEntity.status(response.getStatus()).body(response);
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<Response<ImportJobDTO>> getImportJob(@PathVariable String id) {
+        Response<ImportJobDTO> response = booksImportService.getStatus(id);
+        return ResponseEntity.status(response.getStatus()).body(response);
+    }
+
+    @PostMapping("/{id}/resume")
+    public ResponseEntity<Response<ImportJobDTO>> resumeImportJob(@PathVariable String id) {
+        Response<ImportJobDTO> response = booksImportService.resume(id);
+        return ResponseEntity.status(response.getStatus()).body(response);
+    }
+}
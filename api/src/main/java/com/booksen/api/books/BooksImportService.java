@@ -0,0 +1,543 @@
+package com.booksen.api.books;
+
+import com.booksen.api.dto.books.CreateUpdateBookDTO;
+import com.booksen.api.dto.books.ImportJobDTO;
+import com.booksen.api.helpers.BooksHelper;
+import com.booksen.api.model.ImportJobStatus;
+import com.booksen.api.model.ResourceNotFoundException;
+import com.booksen.api.model.Response;
+import com.booksen.api.model.TooManyRequestsException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/*
+ * Imports CSV (header with name, description, author) or JSONL catalogs in the background.
+ * The file is read one row at a time and written in unordered bulk inserts of batch-size rows,
+ * at most max-in-flight-batches per job: the reader waits for a slot, so memory stays bounded whatever the file size.
+ * Progress is committed per batch: the offset moves over contiguous finished batches, batches finished past a pending
+ * or failed one are recorded as completed ranges with their counts. A resumed job starts at the committed offset and
+ * skips those ranges, so no row is written or counted twice.
+ */
+@Service
+@Slf4j
+public class BooksImportService {
+    private static final int MAX_REPORTED_ERRORS = 20;
+    // Jobs run for minutes, a refused client should not come back right away
+    private static final long RETRY_AFTER_SECONDS = 60;
+    private static final List<String> COLUMNS = List.of("name", "description", "author");
+
+    private final ImportJobRepository importJobRepository;
+    private final BooksRepository booksRepository;
+    private final BooksHelper booksHelper;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final CatalogVersion catalogVersion;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ThreadPoolTaskExecutor importJobExecutor;
+    private final ThreadPoolTaskExecutor importBatchExecutor;
+    private final String stagingDirectory;
+    private final int batchSize;
+    private final int maxInFlightBatches;
+    private final String nodeId;
+
+    // Rows read by the jobs running on this node, ahead of what is committed
+    private final Map<String, AtomicLong> rowsRead = new ConcurrentHashMap<>();
+
+    public BooksImportService(
+            ImportJobRepository importJobRepository,
+            BooksRepository booksRepository,
+            BooksHelper booksHelper,
+            Validator validator,
+            ObjectMapper objectMapper,
+            CatalogVersion catalogVersion,
+            ApplicationEventPublisher eventPublisher,
+            @Qualifier("importJobExecutor") ThreadPoolTaskExecutor importJobExecutor,
+            @Qualifier("importBatchExecutor") ThreadPoolTaskExecutor importBatchExecutor,
+            @Value("${application.books.import.staging-dir}") String stagingDirectory,
+            @Value("${application.books.import.batch-size}") int batchSize,
+            @Value("${application.books.import.max-in-flight-batches}") int maxInFlightBatches,
+            @Value("${application.cache.invalidation.node-id}") String nodeId
+    ) {
+        this.importJobRepository = importJobRepository;
+        this.booksRepository = booksRepository;
+        this.booksHelper = booksHelper;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.catalogVersion = catalogVersion;
+        this.eventPublisher = eventPublisher;
+        this.importJobExecutor = importJobExecutor;
+        this.importBatchExecutor = importBatchExecutor;
+        this.stagingDirectory = stagingDirectory;
+        this.batchSize = batchSize;
+        this.maxInFlightBatches = maxInFlightBatches;
+        this.nodeId = nodeId;
+    }
+
+    public Response<ImportJobDTO> submit(MultipartFile file) throws IOException {
+        if (file == null || file.isEmpty()) return Response.badRequest("No files provided");
+
+        String format = detectFormat(file.getOriginalFilename());
+        if (format == null) return Response.badRequest("Invalid file type. Allowed: .csv, .jsonl");
+        ensureCapacity();
+
+        Path stagingPath = Paths.get(stagingDirectory).toAbsolutePath().normalize();
+        Files.createDirectories(stagingPath);
+        Path staged = stagingPath.resolve(UUID.randomUUID() + "." + format);
+        // Usually a rename of the container's temporary file, the request does not wait for the import itself
+        file.transferTo(staged);
+
+        LocalDateTime now = LocalDateTime.now();
+        ImportJob job = importJobRepository.save(ImportJob.builder()
+                .fileName(file.getOriginalFilename())
+                .format(format)
+                .stagingPath(staged.toString())
+                .nodeId(nodeId)
+                .status(ImportJobStatus.QUEUED)
+                .createdAt(now)
+                .updatedAt(now)
+                .build());
+
+        try {
+            importJobExecutor.execute(() -> run(job.getId()));
+        } catch (TaskRejectedException e) {
+            // Another import took the last queue slot since ensureCapacity
+            importJobRepository.delete(job);
+            deleteStagedFile(job);
+            throw tooManyJobs();
+        }
+        log.info("Queued import job {} for {}", job.getId(), file.getOriginalFilename());
+        return new Response<>(HttpStatus.ACCEPTED.value(), toDTO(job), "Import job queued");
+    }
+
+    public Response<ImportJobDTO> getStatus(String id) {
+        ImportJob job = importJobRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Import job not found"));
+        return Response.ok(toDTO(job), "Import job found");
+    }
+
+    public Response<ImportJobDTO> resume(String id) {
+        ImportJob job = importJobRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Import job not found"));
+
+        if (job.getStatus() != ImportJobStatus.FAILED && job.getStatus() != ImportJobStatus.INTERRUPTED) {
+            return Response.badRequest("Only failed or interrupted import jobs can be resumed");
+        }
+        if (!Files.exists(Paths.get(job.getStagingPath()))) {
+            return Response.badRequest("The imported file is not available on this node anymore");
+        }
+        ensureCapacity();
+
+        ImportJobStatus previousStatus = job.getStatus();
+        job.setStatus(ImportJobStatus.QUEUED);
+        job.setNodeId(nodeId);
+        job.setFailure(null);
+        job.setUpdatedAt(LocalDateTime.now());
+        importJobRepository.save(job);
+
+        try {
+            importJobExecutor.execute(() -> run(id));
+        } catch (TaskRejectedException e) {
+            job.setStatus(previousStatus);
+            importJobRepository.save(job);
+            throw tooManyJobs();
+        }
+        log.info("Resuming import job {} from row {}", id, job.getCommittedOffset());
+        return new Response<>(HttpStatus.ACCEPTED.value(), toDTO(job), "Import job resumed");
+    }
+
+    // Jobs this node was running when it stopped would otherwise stay RUNNING forever
+    @EventListener(ApplicationReadyEvent.class)
+    public void markInterruptedJobs() {
+        for (ImportJobStatus status : List.of(ImportJobStatus.QUEUED, ImportJobStatus.RUNNING)) {
+            for (ImportJob job : importJobRepository.findByNodeIdAndStatus(nodeId, status)) {
+                job.setStatus(ImportJobStatus.INTERRUPTED);
+                job.setUpdatedAt(LocalDateTime.now());
+                importJobRepository.save(job);
+                log.warn("Import job {} was interrupted at row {}", job.getId(), job.getCommittedOffset());
+            }
+        }
+    }
+
+    private void run(String jobId) {
+        ImportJob job = importJobRepository.findById(jobId).orElse(null);
+        if (job == null) return;
+
+        ImportRun run = new ImportRun(job);
+        AtomicLong progress = rowsRead.computeIfAbsent(jobId, id -> new AtomicLong());
+        progress.set(job.getCommittedOffset());
+
+        synchronized (run) {
+            job.setStatus(ImportJobStatus.RUNNING);
+            job.setStartedAt(LocalDateTime.now());
+            job.setUpdatedAt(job.getStartedAt());
+            job.setResumedFromOffset(job.getCommittedOffset());
+            importJobRepository.save(job);
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(job.getStagingPath()), StandardCharsets.UTF_8)) {
+            Map<String, Integer> header = "csv".equals(job.getFormat()) ? readHeader(reader) : null;
+
+            long startOffset = job.getResumedFromOffset();
+            TreeMap<Long, Long> completed = new TreeMap<>();
+            job.getCompletedRanges().forEach(range -> completed.put(range.getStart(), range.getEnd()));
+            long row = 0;
+            Batch batch = new Batch(startOffset);
+            String line;
+            while ((line = reader.readLine()) != null && run.failure == null) {
+                long current = row++;
+                if (current < startOffset) continue;
+                progress.incrementAndGet();
+
+                // Written by an earlier run: the batch read so far ends here, the next one starts after the range
+                Map.Entry<Long, Long> done = completed.floorEntry(current);
+                if (done != null && current < done.getValue()) {
+                    if (current > batch.start) {
+                        batch.end = current;
+                        submit(run, batch);
+                    }
+                    batch = new Batch(done.getValue());
+                    continue;
+                }
+
+                if (!line.isBlank()) readRow(line, current, header, batch);
+                if (batch.books.size() + batch.rejected >= batchSize) {
+                    batch.end = row;
+                    submit(run, batch);
+                    batch = new Batch(row);
+                }
+            }
+            batch.end = row;
+            if (batch.end > batch.start) submit(run, batch);
+
+            // Waits until every in-flight batch has been committed
+            run.slots.acquire(maxInFlightBatches);
+            run.slots.release(maxInFlightBatches);
+        } catch (Exception e) {
+            log.error("Import job {} failed: {}", jobId, e.getMessage(), e);
+            synchronized (run) {
+                if (run.failure == null) run.failure = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            }
+        } finally {
+            rowsRead.remove(jobId);
+        }
+
+        synchronized (run) {
+            job.setStatus(run.failure == null ? ImportJobStatus.COMPLETED : ImportJobStatus.FAILED);
+            job.setFailure(run.failure);
+            job.setFinishedAt(LocalDateTime.now());
+            job.setUpdatedAt(job.getFinishedAt());
+            importJobRepository.save(job);
+        }
+
+        if (run.failure == null) deleteStagedFile(job);
+        log.info("Import job {} {}: {} inserted, {} rejected", jobId, job.getStatus(), job.getInserted(), job.getRejected());
+    }
+
+    private void readRow(String line, long row, Map<String, Integer> header, Batch batch) {
+        CreateUpdateBookDTO dto;
+        try {
+            dto = header != null ? parseCsv(line, header) : parseJson(line);
+        } catch (Exception e) {
+            batch.reject(row, "malformed row");
+            return;
+        }
+
+        booksHelper.prepareForValidation(dto);
+        String error = validate(dto);
+        if (error != null) {
+            batch.reject(row, error);
+            return;
+        }
+
+        batch.rows.add(row);
+        batch.books.add(booksHelper.toEntity(dto, null));
+    }
+
+    // Same constraints as CreateUpdateBookDTO, except the cover which an import row cannot carry
+    private String validate(CreateUpdateBookDTO dto) {
+        List<String> errors = new ArrayList<>();
+        for (String column : COLUMNS) {
+            for (ConstraintViolation<CreateUpdateBookDTO> violation : validator.validateProperty(dto, column)) {
+                errors.add(column + ": " + violation.getMessage());
+            }
+        }
+        return errors.isEmpty() ? null : errors.stream().sorted().collect(Collectors.joining("; "));
+    }
+
+    private void submit(ImportRun run, Batch batch) throws InterruptedException {
+        // Back-pressure: the reader stops here while max-in-flight-batches writes are pending
+        run.slots.acquire();
+        try {
+            CompletableFuture.runAsync(() -> write(batch), importBatchExecutor)
+                    .whenComplete((ignored, error) -> {
+                        try {
+                            commit(run, batch, error);
+                        } finally {
+                            run.slots.release();
+                        }
+                    });
+        } catch (RuntimeException e) {
+            run.slots.release();
+            throw e;
+        }
+    }
+
+    private void write(Batch batch) {
+        if (batch.books.isEmpty()) return;
+
+        Set<Integer> failed = new HashSet<>();
+        try {
+            booksRepository.insertUnordered(batch.books);
+        } catch (BulkOperationException e) {
+            e.getErrors().forEach(error -> {
+                failed.add(error.getIndex());
+                batch.reject(batch.rows.get(error.getIndex()), error.getCode() == 11000 ? "Book already exists." : error.getMessage());
+            });
+        }
+
+        List<Books> inserted = new ArrayList<>();
+        for (int k = 0; k < batch.books.size(); k++) {
+            if (!failed.contains(k)) inserted.add(batch.books.get(k));
+        }
+        batch.inserted = inserted.size();
+
+        // One event per batch: caches and the autocomplete index are updated once, not once per row
+        if (!inserted.isEmpty()) {
+            catalogVersion.bump();
+            eventPublisher.publishEvent(BookBatchChangedEvent.saved(inserted));
+        }
+    }
+
+    /*
+     * Batches can finish out of order, and after one failed: each finished batch is counted right away and saved
+     * either as the new offset, when it starts there, or as a completed range past it.
+     * The offset then absorbs the ranges it has caught up with.
+     */
+    private void commit(ImportRun run, Batch batch, Throwable error) {
+        synchronized (run) {
+            if (error != null) {
+                if (run.failure == null) run.failure = "Batch starting at row " + batch.start + " failed: " + error.getMessage();
+                return;
+            }
+
+            ImportJob job = run.job;
+            job.setInserted(job.getInserted() + batch.inserted);
+            job.setRejected(job.getRejected() + batch.rejected);
+            for (String message : batch.errors) {
+                if (job.getErrors().size() < MAX_REPORTED_ERRORS) job.getErrors().add(message);
+            }
+
+            if (batch.start == job.getCommittedOffset()) {
+                job.setCommittedOffset(batch.end);
+            } else {
+                addCompletedRange(job, batch.start, batch.end);
+            }
+            ImportJob.CompletedRange caughtUp;
+            while ((caughtUp = rangeStartingAt(job, job.getCommittedOffset())) != null) {
+                job.getCompletedRanges().remove(caughtUp);
+                job.setCommittedOffset(caughtUp.getEnd());
+            }
+            job.setUpdatedAt(LocalDateTime.now());
+            importJobRepository.save(job);
+        }
+    }
+
+    // Adjacent ranges are merged, a long run of batches past a failed one stays a single entry
+    private static void addCompletedRange(ImportJob job, long start, long end) {
+        List<ImportJob.CompletedRange> ranges = job.getCompletedRanges();
+        ImportJob.CompletedRange after = rangeStartingAt(job, end);
+        if (after != null) {
+            ranges.remove(after);
+            end = after.getEnd();
+        }
+        for (ImportJob.CompletedRange before : ranges) {
+            if (before.getEnd() == start) {
+                before.setEnd(end);
+                return;
+            }
+        }
+        ranges.add(new ImportJob.CompletedRange(start, end));
+    }
+
+    private static ImportJob.CompletedRange rangeStartingAt(ImportJob job, long start) {
+        for (ImportJob.CompletedRange range : job.getCompletedRanges()) {
+            if (range.getStart() == start) return range;
+        }
+        return null;
+    }
+
+    private Map<String, Integer> readHeader(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        if (line == null) throw new IllegalArgumentException("The CSV file is empty");
+
+        List<String> columns = parseCsvLine(line);
+        Map<String, Integer> header = new HashMap<>();
+        for (int i = 0; i < columns.size(); i++) header.put(columns.get(i).trim().toLowerCase(), i);
+        if (!header.keySet().containsAll(COLUMNS)) {
+            throw new IllegalArgumentException("The CSV header must contain the columns " + COLUMNS);
+        }
+        return header;
+    }
+
+    private CreateUpdateBookDTO parseCsv(String line, Map<String, Integer> header) {
+        List<String> fields = parseCsvLine(line);
+        return CreateUpdateBookDTO.builder()
+                .name(fields.get(header.get("name")))
+                .description(fields.get(header.get("description")))
+                .author(fields.get(header.get("author")))
+                .build();
+    }
+
+    private CreateUpdateBookDTO parseJson(String line) throws IOException {
+        JsonNode node = objectMapper.readTree(line);
+        return CreateUpdateBookDTO.builder()
+                .name(node.path("name").asText(null))
+                .description(node.path("description").asText(null))
+                .author(node.path("author").asText(null))
+                .build();
+    }
+
+    // RFC 4180 fields on a single line: quoted fields may contain commas and doubled quotes, not line breaks
+    private static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    // Checked before anything is staged, so a refused import leaves nothing on disk
+    private void ensureCapacity() {
+        ThreadPoolExecutor executor = importJobExecutor.getThreadPoolExecutor();
+        boolean allRunning = executor.getActiveCount() >= executor.getMaximumPoolSize();
+        if (allRunning && executor.getQueue().remainingCapacity() == 0) throw tooManyJobs();
+    }
+
+    private TooManyRequestsException tooManyJobs() {
+        return new TooManyRequestsException("Too many import jobs are queued, retry later.", RETRY_AFTER_SECONDS);
+    }
+
+    private String detectFormat(String filename) {
+        if (filename == null) return null;
+        String lower = filename.toLowerCase();
+        if (lower.endsWith(".csv")) return "csv";
+        if (lower.endsWith(".jsonl") || lower.endsWith(".ndjson")) return "jsonl";
+        return null;
+    }
+
+    private void deleteStagedFile(ImportJob job) {
+        try {
+            Files.deleteIfExists(Paths.get(job.getStagingPath()));
+        } catch (IOException e) {
+            log.warn("Could not delete the staged file of import job {}: {}", job.getId(), e.getMessage());
+        }
+    }
+
+    private ImportJobDTO toDTO(ImportJob job) {
+        AtomicLong live = rowsRead.get(job.getId());
+        long processed = job.getCommittedOffset();
+        double rowsPerSecond = 0;
+        if (job.getStartedAt() != null) {
+            LocalDateTime end = job.getFinishedAt() != null ? job.getFinishedAt() : LocalDateTime.now();
+            double seconds = Math.max(Duration.between(job.getStartedAt(), end).toMillis(), 1) / 1000.0;
+            rowsPerSecond = Math.round((processed - job.getResumedFromOffset()) / seconds * 10) / 10.0;
+        }
+
+        return ImportJobDTO.builder()
+                .id(job.getId())
+                .fileName(job.getFileName())
+                .format(job.getFormat())
+                .status(job.getStatus())
+                .rowsRead(live != null ? Math.max(live.get(), processed) : processed)
+                .inserted(job.getInserted())
+                .rejected(job.getRejected())
+                .rowsPerSecond(rowsPerSecond)
+                .errors(job.getErrors())
+                .failure(job.getFailure())
+                .createdAt(job.getCreatedAt())
+                .startedAt(job.getStartedAt())
+                .finishedAt(job.getFinishedAt())
+                .build();
+    }
+
+    private class ImportRun {
+        private final ImportJob job;
+        private final Semaphore slots = new Semaphore(maxInFlightBatches);
+        private volatile String failure;
+
+        private ImportRun(ImportJob job) {
+            this.job = job;
+        }
+    }
+
+    // Rows [start, end) of the file, the valid ones are written together
+    private static class Batch {
+        private final long start;
+        private long end;
+        private final List<Long> rows = new ArrayList<>();
+        private final List<Books> books = new ArrayList<>();
+        private final List<String> errors = new ArrayList<>();
+        private long inserted;
+        private long rejected;
+
+        private Batch(long start) {
+            this.start = start;
+        }
+
+        private void reject(long row, String message) {
+            rejected++;
+            errors.add("row " + (row + 1) + ": " + message);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.booksen.api.books;
+
+import com.booksen.api.model.CoverStatus;
+import com.booksen.api.model.PageCursor;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+public interface BooksRepositoryCustom {
+    List<Books> findPage(PageCursor after, int limit);
+
+    List<Books> findSummaryPage(PageCursor after, int limit);
+
+    List<Books> findByFilters(Collection<String> authors, LocalDateTime minDate, LocalDateTime maxDate, PageCursor after, int limit);
+
+    Stream<Books> streamAll();
+
+    void insertUnordered(List<Books> books);
+
+    List<Books> search(String text, int offset, int limit);
+
+    List<Books> findCoversByIds(Collection<String> ids);
+
+    List<Books> findCoversByAuthor(String author, int limit);
+
+    Books removeById(String id);
+
+    Books removeCover(String id, String author);
+
+    long updateAuthor(Collection<String> ids, String author, LocalDateTime updatedAt);
+
+    List<Books> findPendingCovers(String nodeId, LocalDateTime updatedBefore, int limit);
+
+    List<Books> findAbandonedCovers(String nodeId, LocalDateTime updatedBefore, int limit);
+
+    boolean completeCoverIngestion(String id, String stagedCover, String cover, CoverStatus status, LocalDateTime updatedAt);
+}
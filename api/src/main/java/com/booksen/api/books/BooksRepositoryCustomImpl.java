@@ -0,0 +1,166 @@
+package com.booksen.api.books;
+
+import com.booksen.api.model.CoverStatus;
+import com.booksen.api.model.PageCursor;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.TextCriteria;
+import org.springframework.data.mongodb.core.query.TextQuery;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+@RequiredArgsConstructor
+public class BooksRepositoryCustomImpl implements BooksRepositoryCustom {
+    private static final Sort PAGE_ORDER = Sort.by(Sort.Order.asc("createdAt"), Sort.Order.asc("id"));
+    private static final int STREAM_BATCH_SIZE = 500;
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public List<Books> findPage(PageCursor after, int limit) {
+        return mongoTemplate.find(pageQuery(after, limit), Books.class);
+    }
+
+    // Only the listed fields leave the server, description and updatedAt are never read nor mapped
+    @Override
+    public List<Books> findSummaryPage(PageCursor after, int limit) {
+        Query query = pageQuery(after, limit);
+        query.fields().include("name", "author", "cover", "coverStatus", "createdAt");
+        return mongoTemplate.find(query, Books.class);
+    }
+
+    /*
+     * Every filter is optional: authors are matched exactly, minDate is inclusive and maxDate exclusive.
+     * The (author, createdAt, _id) index serves the author filter and still returns rows in page order.
+     */
+    @Override
+    public List<Books> findByFilters(Collection<String> authors, LocalDateTime minDate, LocalDateTime maxDate, PageCursor after, int limit) {
+        Query query = pageQuery(after, limit);
+        if (!authors.isEmpty()) query.addCriteria(Criteria.where("author").in(authors));
+        if (minDate != null || maxDate != null) {
+            Criteria createdAt = Criteria.where("createdAt");
+            if (minDate != null) createdAt.gte(minDate);
+            if (maxDate != null) createdAt.lt(maxDate);
+            query.addCriteria(createdAt);
+        }
+        return mongoTemplate.find(query, Books.class);
+    }
+
+    // Seeks straight to the cursor position on the (createdAt, _id) index, so every page costs the same
+    private Query pageQuery(PageCursor after, int limit) {
+        Query query = new Query().with(PAGE_ORDER).limit(limit);
+        if (after != null) {
+            query.addCriteria(new Criteria().orOperator(
+                    Criteria.where("createdAt").gt(after.createdAt()),
+                    Criteria.where("createdAt").is(after.createdAt()).and("id").gt(after.id())
+            ));
+        }
+        return query;
+    }
+
+    // Backed by a server-side cursor: only one batch is held in memory at a time, the caller must close the stream
+    @Override
+    public Stream<Books> streamAll() {
+        Query query = new Query().with(PAGE_ORDER).cursorBatchSize(STREAM_BATCH_SIZE);
+        return mongoTemplate.stream(query, Books.class);
+    }
+
+    // Ranked by text score (name > author > description weights), the id only keeps equal scores in a stable order
+    @Override
+    public List<Books> search(String text, int offset, int limit) {
+        TextCriteria criteria = TextCriteria.forDefaultLanguage()
+                .matching(text)
+                .caseSensitive(false)
+                .diacriticSensitive(false);
+        Query query = TextQuery.queryText(criteria)
+                .sortByScore()
+                .with(Sort.by(Sort.Order.asc("id")))
+                .skip(offset)
+                .limit(limit);
+        return mongoTemplate.find(query, Books.class);
+    }
+
+    // A failing document does not stop the others, failures are reported through BulkOperationException
+    @Override
+    public void insertUnordered(List<Books> books) {
+        if (books.isEmpty()) return;
+        mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Books.class)
+                .insert(books)
+                .execute();
+    }
+
+    // Only what a bulk write needs to know about its targets: the id and the cover to clean up afterwards
+    @Override
+    public List<Books> findCoversByIds(Collection<String> ids) {
+        return mongoTemplate.find(coversQuery(Criteria.where("id").in(ids)), Books.class);
+    }
+
+    @Override
+    public List<Books> findCoversByAuthor(String author, int limit) {
+        return mongoTemplate.find(coversQuery(Criteria.where("author").is(author)).limit(limit), Books.class);
+    }
+
+    // Removes the book and returns it as it was, null when it was already gone: only one of concurrent deletes gets it
+    @Override
+    public Books removeById(String id) {
+        return mongoTemplate.findAndRemove(Query.query(Criteria.where("id").is(id)), Books.class);
+    }
+
+    /*
+     * Removes one book, only while it still has author when one is given, and returns its id and cover as removed.
+     * Null when the book was already gone: of concurrent deletes only one gets the cover to release.
+     */
+    @Override
+    public Books removeCover(String id, String author) {
+        Criteria criteria = Criteria.where("id").is(id);
+        if (author != null) criteria.and("author").is(author);
+        return mongoTemplate.findAndRemove(coversQuery(criteria), Books.class);
+    }
+
+    // One updateMany for the whole list, returns the number of books actually modified
+    @Override
+    public long updateAuthor(Collection<String> ids, String author, LocalDateTime updatedAt) {
+        if (ids.isEmpty()) return 0;
+        Update update = new Update().set("author", author).set("updatedAt", updatedAt);
+        return mongoTemplate.updateMulti(Query.query(Criteria.where("id").in(ids)), update, Books.class).getModifiedCount();
+    }
+
+    @Override
+    public List<Books> findPendingCovers(String nodeId, LocalDateTime updatedBefore, int limit) {
+        Query query = coversQuery(Criteria.where("coverStatus").is(CoverStatus.PENDING).and("coverNodeId").is(nodeId)
+                .and("updatedAt").lt(updatedBefore)).limit(limit);
+        query.fields().include("coverStatus");
+        return mongoTemplate.find(query, Books.class);
+    }
+
+    // Pending covers staged on another node, or before covers recorded their node
+    @Override
+    public List<Books> findAbandonedCovers(String nodeId, LocalDateTime updatedBefore, int limit) {
+        Query query = coversQuery(Criteria.where("coverStatus").is(CoverStatus.PENDING).and("coverNodeId").ne(nodeId)
+                .and("updatedAt").lt(updatedBefore)).limit(limit);
+        query.fields().include("coverStatus");
+        return mongoTemplate.find(query, Books.class);
+    }
+
+    // Only applies while the book still points to the ingested cover: a concurrent update or delete wins
+    @Override
+    public boolean completeCoverIngestion(String id, String stagedCover, String cover, CoverStatus status, LocalDateTime updatedAt) {
+        Query query = Query.query(Criteria.where("id").is(id).and("cover").is(stagedCover).and("coverStatus").is(CoverStatus.PENDING));
+        Update update = new Update().set("cover", cover).set("coverStatus", status).set("updatedAt", updatedAt).unset("coverNodeId");
+        return mongoTemplate.updateFirst(query, update, Books.class).getModifiedCount() > 0;
+    }
+
+    private Query coversQuery(Criteria criteria) {
+        Query query = Query.query(criteria);
+        query.fields().include("cover");
+        return query;
+    }
+}
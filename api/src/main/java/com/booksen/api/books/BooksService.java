@@ -1,27 +1,51 @@
 package com.booksen.api.books;
 
+import com.booksen.api.config.CacheConfiguration;
 import com.booksen.api.dto.books.BookResponseDTO;
+import com.booksen.api.dto.books.BookSuggestionsDTO;
+import com.booksen.api.dto.books.BookSummaryDTO;
 import com.booksen.api.dto.books.CreateUpdateBookDTO;
 import com.booksen.api.helpers.BooksHelper;
 import com.booksen.api.helpers.FileServices;
+import com.booksen.api.helpers.StoredImage;
+import com.booksen.api.media.MediaService;
+import com.booksen.api.model.CoverStatus;
+import com.booksen.api.model.OffsetCursor;
+import com.booksen.api.model.PageCursor;
 import com.booksen.api.model.ResourceNotFoundException;
 import com.booksen.api.model.Response;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.ConstraintViolation;
 import jakarta.validation.ConstraintViolationException;
 import jakarta.validation.Validator;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.awt.print.Book;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @Slf4j
@@ -30,32 +54,230 @@ public class BooksService {
     private final BooksHelper booksHelper;
     private final Validator validator;
     private final FileServices fileServices;
+    private final ObjectMapper objectMapper;
+    private final Cache booksCache;
+    private final com.github.benmanes.caffeine.cache.Cache<Object, Object> booksById;
+    private final Cache bookFiltersCache;
+    private final com.github.benmanes.caffeine.cache.Cache<Object, Object> bookFiltersByKey;
+    private final AtomicLong filtersGeneration = new AtomicLong();
+    private final ApplicationEventPublisher eventPublisher;
+    private final CatalogVersion catalogVersion;
+    private final BooksSuggestIndex booksSuggestIndex;
+    private final CoverIngestionService coverIngestionService;
+    private final MediaService mediaService;
+    private final int defaultPageSize;
+    private final int maxPageSize;
 
-    public BooksService(BooksRepository booksRepository, BooksHelper booksHelper, Validator validator, FileServices fileServices) {
+    public BooksService(
+            BooksRepository booksRepository,
+            BooksHelper booksHelper,
+            Validator validator,
+            FileServices fileServices,
+            ObjectMapper objectMapper,
+            CacheManager cacheManager,
+            ApplicationEventPublisher eventPublisher,
+            CatalogVersion catalogVersion,
+            BooksSuggestIndex booksSuggestIndex,
+            CoverIngestionService coverIngestionService,
+            MediaService mediaService,
+            @Value("${application.books.pagination.default-limit}") int defaultPageSize,
+            @Value("${application.books.pagination.max-limit}") int maxPageSize
+    ) {
         this.booksRepository = booksRepository;
         this.booksHelper = booksHelper;
         this.validator = validator;
         this.fileServices = fileServices;
+        this.objectMapper = objectMapper;
+        this.booksCache = cacheManager.getCache(CacheConfiguration.BOOKS_CACHE);
+        this.booksById = nativeCache(booksCache);
+        this.bookFiltersCache = cacheManager.getCache(CacheConfiguration.BOOK_FILTERS_CACHE);
+        this.bookFiltersByKey = nativeCache(bookFiltersCache);
+        this.eventPublisher = eventPublisher;
+        this.catalogVersion = catalogVersion;
+        this.booksSuggestIndex = booksSuggestIndex;
+        this.coverIngestionService = coverIngestionService;
+        this.mediaService = mediaService;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
     }
 
+    /*
+     * Loaded through Caffeine's atomic get: an evict for the same id waits for a running load and removes its result,
+     * so a read racing an update cannot put back the state from before the update. A missing book is not cached.
+     */
     public Response<BookResponseDTO> getById(String id) {
-        Optional<Books> entity = booksRepository.findById(id);
-        return entity
-                .map(e -> new Response<>(HttpStatus.OK.value(), booksHelper.toResponseEntity(e), "Book found successfully"))
-                .orElseGet(() -> new Response<>(HttpStatus.NOT_FOUND.value(), null, "Book not found successfully"));
+        BookResponseDTO book = (BookResponseDTO) booksById.get(id, key -> booksRepository.findById(id)
+                .map(booksHelper::toResponseEntity)
+                .orElse(null));
+        if (book == null) return new Response<>(HttpStatus.NOT_FOUND.value(), null, "Book not found successfully");
+        return new Response<>(HttpStatus.OK.value(), book, "Book found successfully");
+    }
+
+    public Response<List<BookResponseDTO>> getPage(String cursor, Integer limit) {
+        int pageSize = resolvePageSize(limit);
+        // One extra row tells whether another page exists without a count query
+        List<Books> books = booksRepository.findPage(PageCursor.decode(cursor), pageSize + 1);
+        return toPage(books, pageSize, booksHelper::toResponseEntity);
+    }
+
+    public Response<List<BookSummaryDTO>> getSummaryPage(String cursor, Integer limit) {
+        int pageSize = resolvePageSize(limit);
+        List<Books> books = booksRepository.findSummaryPage(PageCursor.decode(cursor), pageSize + 1);
+        return toPage(books, pageSize, booksHelper::toSummaryEntity);
+    }
+
+    public String getETag(BookResponseDTO book) {
+        return booksHelper.toETag(book);
+    }
+
+    // Computed before the page is read: a write in between only makes the client fetch again
+    public String getPageETag(String view, String cursor, Integer limit) {
+        return String.format("\"%s-%d-%d-%s\"", view, catalogVersion.current(), resolvePageSize(limit), Objects.toString(cursor, ""));
+    }
+
+    // Bumped first: a node that re-reads the version because of the event already sees the new value
+    private void afterWrite(BookChangedEvent event) {
+        catalogVersion.bump();
+        eventPublisher.publishEvent(event);
+    }
+
+    // Local writes and the ones relayed from other replicas both land here
+    @EventListener
+    public void onBookChanged(BookChangedEvent event) {
+        if (event.isWholeCollection()) {
+            booksCache.clear();
+            bookFiltersCache.clear();
+        } else {
+            booksCache.evict(event.id());
+        }
+        // Any write can move a book in or out of any filter result
+        filtersGeneration.incrementAndGet();
+    }
+
+    @EventListener
+    public void onBooksChanged(BookBatchChangedEvent event) {
+        event.saved().forEach(book -> booksCache.evict(book.getId()));
+        event.deleted().forEach(booksCache::evict);
+        filtersGeneration.incrementAndGet();
+    }
+
+    /*
+     * Filter results are cached under the generation current when the request started: a write moves every
+     * following request to new keys, so a page loaded before the write is never served after it, and nothing
+     * has to be cleared. Entries of past generations age out with the cache size and TTL.
+     */
+    public Response<List<BookResponseDTO>> filter(List<String> authors, LocalDate from, LocalDate to, String cursor, Integer limit) {
+        if (from != null && to != null && from.isAfter(to)) throw new IllegalArgumentException("from must not be after to");
+
+        int pageSize = resolvePageSize(limit);
+        List<String> normalizedAuthors = authors == null ? List.of() : authors.stream()
+                .map(String::trim)
+                .filter(author -> !author.isEmpty())
+                .distinct()
+                .sorted()
+                .toList();
+
+        // Equivalent requests (author order, duplicates, blanks) share the same entry
+        String key = filtersGeneration.get() + "|" + String.join(",", normalizedAuthors) + "|" + from + "|" + to
+                + "|" + pageSize + "|" + Objects.toString(cursor, "");
+        FilterPage page = (FilterPage) bookFiltersByKey.get(key, k -> {
+            List<Books> books = booksRepository.findByFilters(
+                    normalizedAuthors,
+                    from != null ? from.atStartOfDay() : null,
+                    to != null ? to.plusDays(1).atStartOfDay() : null,
+                    PageCursor.decode(cursor),
+                    pageSize + 1
+            );
+            Response<List<BookResponseDTO>> response = toPage(books, pageSize, booksHelper::toResponseEntity);
+            return new FilterPage(List.copyOf(response.getData()), response.getNextCursor());
+        });
+        // Each caller gets its own envelope, the cached page is shared
+        return Response.page(page.books(), page.books().isEmpty() ? "No Books found" : "Books retrieved successfully", page.nextCursor());
     }
 
-    public Response<List<BookResponseDTO>> getAll() {
-        List<BookResponseDTO> entities = booksRepository.findAll().stream()
+    public Response<List<BookResponseDTO>> search(String text, String cursor, Integer limit) {
+        if (text == null || text.isBlank()) throw new IllegalArgumentException("Search text is required");
+
+        int pageSize = resolvePageSize(limit);
+        int offset = OffsetCursor.decode(cursor);
+        List<Books> books = booksRepository.search(text.trim(), offset, pageSize + 1);
+
+        boolean hasMore = books.size() > pageSize;
+        if (hasMore) books = books.subList(0, pageSize);
+
+        List<BookResponseDTO> entities = books.stream()
                 .map(booksHelper::toResponseEntity)
                 .collect(Collectors.toList());
 
-        return new Response<>(HttpStatus.OK.value(), entities,
-                entities.isEmpty() ? "No Books found" : "Books retrieved successfully");
+        String nextCursor = hasMore ? new OffsetCursor(offset + pageSize).encode() : null;
+        return Response.page(entities, entities.isEmpty() ? "No Books found" : "Books retrieved successfully", nextCursor);
+    }
+
+    public Response<BookSuggestionsDTO> suggest(String prefix, Integer limit) {
+        if (prefix == null || prefix.isBlank()) throw new IllegalArgumentException("Prefix is required");
+
+        int size = booksSuggestIndex.resolveLimit(limit);
+        BookSuggestionsDTO suggestions = BookSuggestionsDTO.builder()
+                .names(booksSuggestIndex.suggestNames(prefix, size))
+                .authors(booksSuggestIndex.suggestAuthors(prefix, size))
+                .build();
+        return Response.ok(suggestions, "Suggestions retrieved successfully");
+    }
+
+    /*
+     * Writes the whole catalog as newline-delimited JSON while reading it from a Mongo cursor.
+     * The generator keeps a small fixed buffer and flushes it to the output as it fills,
+     * so memory stays flat whatever the size of the collection.
+     */
+    public void exportAll(OutputStream output) throws IOException {
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(output);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+        try (Stream<Books> books = booksRepository.streamAll()) {
+            boolean first = true;
+            for (Books book : (Iterable<Books>) books::iterator) {
+                generator.writeObject(booksHelper.toResponseEntity(book));
+                generator.writeRaw('\n');
+
+                // Send the first record right away instead of waiting for the buffer to fill
+                if (first) {
+                    generator.flush();
+                    first = false;
+                }
+            }
+        } finally {
+            generator.close();
+        }
+    }
+
+    private <T> Response<List<T>> toPage(List<Books> books, int pageSize, Function<Books, T> mapper) {
+        boolean hasMore = books.size() > pageSize;
+        if (hasMore) books = books.subList(0, pageSize);
+
+        List<T> entities = books.stream()
+                .map(mapper)
+                .collect(Collectors.toList());
+
+        String nextCursor = hasMore ? booksHelper.toCursor(books.get(books.size() - 1)).encode() : null;
+        return Response.page(entities, entities.isEmpty() ? "No Books found" : "Books retrieved successfully", nextCursor);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static com.github.benmanes.caffeine.cache.Cache<Object, Object> nativeCache(Cache cache) {
+        return (com.github.benmanes.caffeine.cache.Cache<Object, Object>) cache.getNativeCache();
+    }
+
+    private record FilterPage(List<BookResponseDTO> books, String nextCursor) {}
+
+    private int resolvePageSize(Integer limit) {
+        if (limit == null) return defaultPageSize;
+        if (limit < 1) throw new IllegalArgumentException("Limit must be a positive number");
+        return Math.min(limit, maxPageSize);
     }
 
-    public Response<Object> getBookCover(String filename) {
-        return fileServices.getImage(filename);
+    public void getBookCover(String filename, Integer width, Integer height, String size,
+                             HttpServletRequest request, HttpServletResponse response) throws IOException {
+        mediaService.serve(filename, width, height, size, request, response);
     }
 
     @Transactional
@@ -69,6 +291,8 @@ public class BooksService {
             String cover = buildUserResponse != null ? (String) buildUserResponse.getData() : null;
 
             Books savedEntity = booksRepository.save(booksHelper.toEntity(book, cover));
+            afterWrite(BookChangedEvent.saved(savedEntity));
+            coverIngestionService.submit(savedEntity);
             return new Response<>(HttpStatus.CREATED.value(), savedEntity, "Created %d Books successfully");
         } catch (Exception e) {
             log.error("Error creating {}: Books", e.getMessage(), e);
@@ -105,6 +329,8 @@ public class BooksService {
 
         try {
             Books updatedEntity = booksRepository.save(entity);
+            afterWrite(BookChangedEvent.saved(updatedEntity));
+            coverIngestionService.submit(updatedEntity);
             log.info("Successfully updated Books with ID: {}", id);
             return new Response<>(HttpStatus.OK.value(), booksHelper.toResponseEntity(updatedEntity), String.format("Books updated successfully"));
         } catch (Exception e) {
@@ -113,17 +339,45 @@ public class BooksService {
         }
     }
 
+    /*
+     * Replaces the cover with a raw image body, stored as it streams in: unlike the multipart update there is
+     * no spooled part and no staging, the book points to its stored cover as soon as the request returns.
+     */
+    public Response<Object> replaceCover(String id, InputStream body, long declaredLength) throws IOException {
+        Books entity = booksRepository.findById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Books not found"));
+
+        StoredImage image = fileServices.storeStream(body, declaredLength);
+        String previous = entity.getCover();
+        try {
+            entity.setCover(image.filename());
+            entity.setCoverStatus(CoverStatus.READY);
+            entity.setCoverNodeId(null);
+            entity.setUpdatedAt(LocalDateTime.now());
+            Books updatedEntity = booksRepository.save(entity);
+            afterWrite(BookChangedEvent.saved(updatedEntity));
+            log.info("Stored cover {} of Books {}: {} bytes, {}x{}", image.filename(), id, image.size(), image.width(), image.height());
+            if (previous != null) fileServices.releaseImage(previous);
+            return new Response<>(HttpStatus.OK.value(), booksHelper.toResponseEntity(updatedEntity), "Cover updated successfully");
+        } catch (RuntimeException e) {
+            fileServices.releaseImage(image.filename());
+            throw e;
+        }
+    }
+
     @Transactional
     public Response<Object> delete(String id) {
         log.info("Deleting Books with ID: {}", id);
-        Books entity = booksRepository.findById(id)
-                .orElseThrow(() -> {
-                    log.warn("{} with ID Books not found", id);
-                    return new ResourceNotFoundException(String.format("Books not found"));
-                });
+        // The cover is released by the call that removed the book, a concurrent delete of the same id gets a 404
+        Books entity = booksRepository.removeById(id);
+        if (entity == null) {
+            log.warn("{} with ID Books not found", id);
+            throw new ResourceNotFoundException(String.format("Books not found"));
+        }
 
         try {
-            booksRepository.deleteById(id);
+            afterWrite(BookChangedEvent.deleted(id));
+            if (entity.getCover() != null) fileServices.releaseImage(entity.getCover());
             log.info("Successfully deleted Books with ID: {}", id);
             return new Response<>(HttpStatus.OK.value(), entity, String.format("BOOKS deleted successfully"));
         } catch (Exception e) {
@@ -0,0 +1,184 @@
+package com.booksen.api.books;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/*
+ * In-memory autocomplete over lowercased book names (most recently updated first)
+ * and distinct authors (authors with the most books first).
+ * Built from a projection of the collection at startup, then kept up to date from BookChangedEvent.
+ */
+@Component
+@Slf4j
+public class BooksSuggestIndex {
+    private final MongoTemplate mongoTemplate;
+    private final int defaultLimit;
+    private final int maxLimit;
+    private final PrefixIndex names;
+    private final PrefixIndex authors;
+
+    // What is indexed for each book, needed to undo it when the book changes or goes away
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Map<String, Integer> booksPerAuthor = new HashMap<>();
+    private final Map<String, String> authorDisplayNames = new HashMap<>();
+    private Set<String> deletedWhileBuilding;
+
+    public BooksSuggestIndex(
+            MongoTemplate mongoTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${application.books.suggest.default-limit}") int defaultLimit,
+            @Value("${application.books.suggest.max-limit}") int maxLimit
+    ) {
+        this.mongoTemplate = mongoTemplate;
+        this.defaultLimit = defaultLimit;
+        this.maxLimit = maxLimit;
+        this.names = new PrefixIndex(maxLimit);
+        this.authors = new PrefixIndex(maxLimit);
+
+        Gauge.builder("books.suggest.terms", () -> names.size() + authors.size())
+                .description("Names and authors held by the autocomplete index")
+                .register(meterRegistry);
+        Gauge.builder("books.suggest.memory", this::estimatedBytes)
+                .description("Estimated heap used by the autocomplete index")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    public int resolveLimit(Integer limit) {
+        if (limit == null) return defaultLimit;
+        if (limit < 1) throw new IllegalArgumentException("Limit must be a positive number");
+        return Math.min(limit, maxLimit);
+    }
+
+    public List<String> suggestNames(String prefix, int limit) {
+        return names.top(normalize(prefix), limit);
+    }
+
+    public List<String> suggestAuthors(String prefix, int limit) {
+        List<String> terms = authors.top(normalize(prefix), limit);
+        synchronized (this) {
+            return terms.stream().map(term -> authorDisplayNames.getOrDefault(term, term)).toList();
+        }
+    }
+
+    public long estimatedBytes() {
+        return names.estimatedBytes() + authors.estimatedBytes();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        long started = System.currentTimeMillis();
+        synchronized (this) {
+            deletedWhileBuilding = new HashSet<>();
+            entries.clear();
+            booksPerAuthor.clear();
+            authorDisplayNames.clear();
+            names.clear();
+            authors.clear();
+        }
+
+        Query query = new Query().cursorBatchSize(1000);
+        query.fields().include("name", "author", "updatedAt");
+        try (Stream<Books> books = mongoTemplate.stream(query, Books.class)) {
+            books.forEach(book -> {
+                synchronized (this) {
+                    if (!deletedWhileBuilding.contains(book.getId())) index(book);
+                }
+            });
+        }
+
+        synchronized (this) {
+            deletedWhileBuilding = null;
+        }
+        log.info("Autocomplete index built in {} ms: {} names, {} authors, ~{} KB",
+                System.currentTimeMillis() - started, names.size(), authors.size(), estimatedBytes() / 1024);
+    }
+
+    @EventListener
+    public void onBookChanged(BookChangedEvent event) {
+        if (event.isWholeCollection()) {
+            build();
+            return;
+        }
+
+        synchronized (this) {
+            if (event.isDeleted()) {
+                unindex(event.id());
+                if (deletedWhileBuilding != null) deletedWhileBuilding.add(event.id());
+            } else {
+                index(event.book());
+            }
+        }
+    }
+
+    @EventListener
+    public synchronized void onBooksChanged(BookBatchChangedEvent event) {
+        event.saved().forEach(this::index);
+        event.deleted().forEach(id -> {
+            unindex(id);
+            if (deletedWhileBuilding != null) deletedWhileBuilding.add(id);
+        });
+    }
+
+    // Called with the monitor held
+    private void index(Books book) {
+        Entry previous = entries.get(book.getId());
+        long recency = toMillis(book.getUpdatedAt());
+        // The startup scan can return an older state than an event that was already applied
+        if (previous != null && previous.recency() > recency) return;
+
+        unindex(book.getId());
+        Entry entry = new Entry(normalize(book.getName()), normalize(book.getAuthor()), recency);
+        entries.put(book.getId(), entry);
+
+        if (!entry.name().isEmpty()) names.put(entry.name(), recency);
+        if (!entry.author().isEmpty()) {
+            int count = booksPerAuthor.merge(entry.author(), 1, Integer::sum);
+            authorDisplayNames.putIfAbsent(entry.author(), book.getAuthor().trim());
+            authors.put(entry.author(), count);
+        }
+    }
+
+    // Called with the monitor held
+    private void unindex(String id) {
+        Entry entry = entries.remove(id);
+        if (entry == null) return;
+
+        if (!entry.name().isEmpty()) names.remove(entry.name());
+        if (!entry.author().isEmpty()) {
+            Integer count = booksPerAuthor.computeIfPresent(entry.author(), (author, books) -> books > 1 ? books - 1 : null);
+            if (count == null) {
+                authors.remove(entry.author());
+                authorDisplayNames.remove(entry.author());
+            } else {
+                authors.put(entry.author(), count);
+            }
+        }
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase();
+    }
+
+    private static long toMillis(LocalDateTime dateTime) {
+        return dateTime != null ? dateTime.toInstant(ZoneOffset.UTC).toEpochMilli() : 0L;
+    }
+
+    private record Entry(String name, String author, long recency) {}
+}
@@ -0,0 +1,84 @@
+package com.booksen.api.books;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Version of the whole book catalog, shared by every replica through a counter document.
+ * Each write path bumps it once before publishing its change events. Every node keeps the last value in memory
+ * for at most max-age, and re-reads it sooner after a local book change or a bump relayed by the change stream,
+ * so listing ETags are usually computed without any query and are never stale for longer than max-age.
+ */
+@Component
+public class CatalogVersion {
+    public static final String COLLECTION = "catalog_versions";
+    private static final String CATALOG_ID = "books";
+
+    private final MongoTemplate mongoTemplate;
+    private final long maxAgeNanos;
+    private final AtomicLong generation = new AtomicLong();
+    private volatile Snapshot snapshot;
+
+    public CatalogVersion(
+            MongoTemplate mongoTemplate,
+            @Value("${application.books.catalog-version.max-age}") Duration maxAge
+    ) {
+        this.mongoTemplate = mongoTemplate;
+        this.maxAgeNanos = maxAge.toNanos();
+    }
+
+    public long current() {
+        Snapshot cached = snapshot;
+        if (cached != null && cached.generation() == generation.get() && System.nanoTime() - cached.readAt() < maxAgeNanos) {
+            return cached.version();
+        }
+
+        long observedGeneration = generation.get();
+        long readAt = System.nanoTime();
+        Document counter = mongoTemplate.findById(CATALOG_ID, Document.class, COLLECTION);
+        long version = counter != null ? counter.get("version", Number.class).longValue() : 0L;
+        snapshot = new Snapshot(observedGeneration, version, readAt);
+        return version;
+    }
+
+    public void bump() {
+        long observedGeneration = generation.incrementAndGet();
+        long readAt = System.nanoTime();
+        Document counter = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(CATALOG_ID)),
+                new Update().inc("version", 1L),
+                FindAndModifyOptions.options().upsert(true).returnNew(true),
+                Document.class,
+                COLLECTION
+        );
+        if (counter != null) snapshot = new Snapshot(observedGeneration, counter.get("version", Number.class).longValue(), readAt);
+    }
+
+    @EventListener
+    public void onBookChanged(BookChangedEvent event) {
+        generation.incrementAndGet();
+    }
+
+    @EventListener
+    public void onBooksChanged(BookBatchChangedEvent event) {
+        generation.incrementAndGet();
+    }
+
+    // A book change relayed from another replica can arrive before that replica's bump, this one comes after it
+    @EventListener
+    public void onCatalogVersionChanged(CatalogVersionChangedEvent event) {
+        generation.incrementAndGet();
+    }
+
+    private record Snapshot(long generation, long version, long readAt) {}
+}
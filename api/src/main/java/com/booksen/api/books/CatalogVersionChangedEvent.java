@@ -0,0 +1,5 @@
+package com.booksen.api.books;
+
+// Published when the shared catalog version counter was bumped, relayed from the change stream on catalog_versions
+public record CatalogVersionChangedEvent() {
+}
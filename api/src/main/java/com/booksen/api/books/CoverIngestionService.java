@@ -0,0 +1,134 @@
+package com.booksen.api.books;
+
+import com.booksen.api.helpers.FileServices;
+import com.booksen.api.model.CoverStatus;
+import com.booksen.api.model.UnsupportedMediaTypeException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Second half of a cover upload: the request only staged the file (see FileServices.stageFile) and saved the book as PENDING.
+ * Here, on a bounded pool, the file is hashed and stored under its content name, then the book points to it and flips to READY.
+ * Covers the pool could not take, or that were pending when the node stopped, are picked up again by the retry sweep.
+ * Staged files only exist on the node that received them: each node sweeps its own covers, and a cover left pending
+ * past abandon-after by another node (stopped for good) or whose staged file is gone is marked FAILED.
+ */
+@Service
+@Slf4j
+public class CoverIngestionService {
+    private static final int SWEEP_BATCH_SIZE = 100;
+
+    private final BooksRepository booksRepository;
+    private final FileServices fileServices;
+    private final CatalogVersion catalogVersion;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ThreadPoolTaskExecutor coverIngestionExecutor;
+    private final Duration retryAfter;
+    private final Duration abandonAfter;
+    private final String nodeId;
+
+    // Covers queued or being ingested on this node, so the sweep does not submit them twice
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    public CoverIngestionService(
+            BooksRepository booksRepository,
+            FileServices fileServices,
+            CatalogVersion catalogVersion,
+            ApplicationEventPublisher eventPublisher,
+            @Qualifier("coverIngestionExecutor") ThreadPoolTaskExecutor coverIngestionExecutor,
+            @Value("${application.media.ingestion.retry-after}") Duration retryAfter,
+            @Value("${application.media.ingestion.abandon-after}") Duration abandonAfter,
+            @Value("${application.cache.invalidation.node-id}") String nodeId
+    ) {
+        this.booksRepository = booksRepository;
+        this.fileServices = fileServices;
+        this.catalogVersion = catalogVersion;
+        this.eventPublisher = eventPublisher;
+        this.coverIngestionExecutor = coverIngestionExecutor;
+        this.retryAfter = retryAfter;
+        this.abandonAfter = abandonAfter;
+        this.nodeId = nodeId;
+    }
+
+    // Called once the book pointing to the staged cover is saved
+    public void submit(Books book) {
+        if (book.getCover() == null || book.getCoverStatus() != CoverStatus.PENDING) return;
+
+        String id = book.getId();
+        String cover = book.getCover();
+        if (!inFlight.add(cover)) return;
+        try {
+            coverIngestionExecutor.execute(() -> ingest(id, cover));
+        } catch (TaskRejectedException e) {
+            inFlight.remove(cover);
+            log.warn("Cover ingestion queue is full, {} will be retried by the sweep", cover);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${application.media.ingestion.retry-after}")
+    public void retryPending() {
+        for (Books book : booksRepository.findPendingCovers(nodeId, LocalDateTime.now().minus(retryAfter), SWEEP_BATCH_SIZE)) {
+            submit(book);
+        }
+        for (Books book : booksRepository.findAbandonedCovers(nodeId, LocalDateTime.now().minus(abandonAfter), SWEEP_BATCH_SIZE)) {
+            if (complete(book.getId(), book.getCover(), book.getCover(), CoverStatus.FAILED)) {
+                log.warn("Cover {} of book {} was left pending by another node, marked as failed", book.getCover(), book.getId());
+            }
+        }
+    }
+
+    private void ingest(String bookId, String stagedCover) {
+        try {
+            String cover = fileServices.storeStagedFile(stagedCover);
+            // The stored file got a reference for this book, given back if the book moved on meanwhile
+            if (!complete(bookId, stagedCover, cover, CoverStatus.READY)) releaseCover(cover);
+            releaseCover(stagedCover);
+        } catch (NoSuchFileException e) {
+            // Usually deleted along with its book, or replaced by another cover, while it was queued: nothing to update.
+            // If the book still waits for it the file was lost, retrying would not bring it back
+            if (complete(bookId, stagedCover, stagedCover, CoverStatus.FAILED)) {
+                log.warn("Staged cover {} of book {} is gone, marked as failed", stagedCover, bookId);
+            }
+        } catch (UnsupportedMediaTypeException e) {
+            // The bytes are not an allowed image whatever the file name said, retrying would not change them
+            if (complete(bookId, stagedCover, stagedCover, CoverStatus.FAILED)) {
+                log.warn("Staged cover {} of book {} is not an allowed image, marked as failed", stagedCover, bookId);
+            }
+        } catch (IOException e) {
+            log.error("Error ingesting cover {} of book {}: {}", stagedCover, bookId, e.getMessage(), e);
+            // The staged file is kept, a failed cover is still served from the staging directory
+            complete(bookId, stagedCover, stagedCover, CoverStatus.FAILED);
+        } finally {
+            inFlight.remove(stagedCover);
+        }
+    }
+
+    private boolean complete(String bookId, String stagedCover, String cover, CoverStatus status) {
+        if (!booksRepository.completeCoverIngestion(bookId, stagedCover, cover, status, LocalDateTime.now())) return false;
+
+        catalogVersion.bump();
+        booksRepository.findById(bookId).ifPresent(book -> eventPublisher.publishEvent(BookChangedEvent.saved(book)));
+        return true;
+    }
+
+    private void releaseCover(String cover) {
+        try {
+            fileServices.releaseImage(cover);
+        } catch (IOException e) {
+            log.warn("Could not delete cover {}: {}", cover, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.booksen.api.books;
+
+import com.booksen.api.model.ImportJobStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Document(collection = "import_jobs")
+public class ImportJob {
+    @Id
+    private String id;
+
+    private String fileName;
+    private String format;
+    private String stagingPath;
+    private String nodeId;
+    private ImportJobStatus status;
+
+    // Counters cover the committed rows: every data row before committedOffset, and those of completedRanges
+    private long committedOffset;
+    // Batches finished beyond a batch still pending or failed, skipped by a resumed run
+    @Builder.Default
+    private List<CompletedRange> completedRanges = new ArrayList<>();
+    private long inserted;
+    private long rejected;
+    // Where the current run started, used for the throughput
+    private long resumedFromOffset;
+
+    @Builder.Default
+    private List<String> errors = new ArrayList<>();
+    private String failure;
+
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime updatedAt;
+    private LocalDateTime finishedAt;
+
+    // Data rows [start, end) of the file
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CompletedRange {
+        private long start;
+        private long end;
+    }
+}
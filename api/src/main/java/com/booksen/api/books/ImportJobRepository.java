@@ -0,0 +1,12 @@
+package com.booksen.api.books;
+
+import com.booksen.api.model.ImportJobStatus;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ImportJobRepository extends MongoRepository<ImportJob, String> {
+    List<ImportJob> findByNodeIdAndStatus(String nodeId, ImportJobStatus status);
+}
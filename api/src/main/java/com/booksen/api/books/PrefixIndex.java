@@ -0,0 +1,244 @@
+package com.booksen.api.books;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ * Radix tree of terms where every node keeps the best scored terms of its subtree,
+ * so a prefix lookup is a walk down the tree and returns a precomputed list, whatever the number of matches.
+ * Writes only recompute the nodes on the path of the written term.
+ */
+public final class PrefixIndex {
+    // Rough object sizes on a 64-bit JVM with compressed oops, only used to report the footprint
+    private static final int NODE_BYTES = 40;
+    private static final int ARRAY_BYTES = 16;
+    private static final int REFERENCE_BYTES = 4;
+    private static final int STRING_BYTES = 40;
+
+    private final int topSize;
+    private final Map<String, Long> scores = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Comparator<String> byScore;
+    private Node root = new Node("");
+
+    public PrefixIndex(int topSize) {
+        this.topSize = topSize;
+        this.byScore = Comparator.<String>comparingLong(scores::get).reversed().thenComparing(Comparator.naturalOrder());
+    }
+
+    public List<String> top(String prefix, int limit) {
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            String rest = prefix;
+            while (!rest.isEmpty()) {
+                Node child = node.child(rest.charAt(0));
+                if (child == null) return List.of();
+                if (child.label.startsWith(rest)) {
+                    node = child;
+                    break;
+                }
+                if (!rest.startsWith(child.label)) return List.of();
+                rest = rest.substring(child.label.length());
+                node = child;
+            }
+            return Arrays.asList(node.top).subList(0, Math.min(limit, node.top.length));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(String term, long score) {
+        lock.writeLock().lock();
+        try {
+            scores.put(term, score);
+            List<Node> path = new ArrayList<>();
+            Node node = root;
+            String rest = term;
+            path.add(node);
+
+            while (!rest.isEmpty()) {
+                Node child = node.child(rest.charAt(0));
+                if (child == null) {
+                    child = new Node(rest);
+                    node.addChild(child);
+                    rest = "";
+                } else {
+                    int common = commonPrefix(child.label, rest);
+                    if (common < child.label.length()) child = split(node, child, common);
+                    rest = rest.substring(common);
+                }
+                node = child;
+                path.add(node);
+            }
+
+            node.term = term;
+            recompute(path);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String term) {
+        lock.writeLock().lock();
+        try {
+            if (scores.remove(term) == null) return;
+
+            List<Node> path = new ArrayList<>();
+            Node node = root;
+            String rest = term;
+            path.add(node);
+            while (!rest.isEmpty()) {
+                node = node.child(rest.charAt(0));
+                rest = rest.substring(node.label.length());
+                path.add(node);
+            }
+            node.term = null;
+
+            // Drop the emptied leaf and fold single-child nodes back into their child to keep the tree compact
+            for (int i = path.size() - 1; i > 0; i--) {
+                Node current = path.get(i);
+                Node parent = path.get(i - 1);
+                if (current.term == null && current.children.length == 0) {
+                    parent.removeChild(current);
+                } else if (current.term == null && current.children.length == 1) {
+                    Node only = current.children[0];
+                    only.label = current.label + only.label;
+                    parent.replaceChild(current, only);
+                    path.set(i, only);
+                }
+            }
+            recompute(path);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            scores.clear();
+            root = new Node("");
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return scores.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long estimatedBytes() {
+        lock.readLock().lock();
+        try {
+            // Terms are referenced from the score map and the tree, their characters are counted once
+            long bytes = (long) scores.size() * (STRING_BYTES + 3L * REFERENCE_BYTES + 16);
+            for (String term : scores.keySet()) bytes += term.length();
+            return bytes + estimatedBytes(root);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long estimatedBytes(Node node) {
+        long bytes = NODE_BYTES + STRING_BYTES + node.label.length()
+                + ARRAY_BYTES + 2L * node.keys.length
+                + ARRAY_BYTES + (long) REFERENCE_BYTES * node.children.length
+                + ARRAY_BYTES + (long) REFERENCE_BYTES * node.top.length;
+        for (Node child : node.children) bytes += estimatedBytes(child);
+        return bytes;
+    }
+
+    private Node split(Node parent, Node child, int at) {
+        Node middle = new Node(child.label.substring(0, at));
+        parent.replaceChild(child, middle);
+        child.label = child.label.substring(at);
+        middle.addChild(child);
+        return middle;
+    }
+
+    // Bottom-up: the top terms of a node are the best of its own term and of its children's top terms
+    private void recompute(List<Node> path) {
+        for (int i = path.size() - 1; i >= 0; i--) {
+            Node node = path.get(i);
+            List<String> candidates = new ArrayList<>();
+            if (node.term != null) candidates.add(node.term);
+            for (Node child : node.children) candidates.addAll(Arrays.asList(child.top));
+
+            candidates.sort(byScore);
+            node.top = candidates.subList(0, Math.min(topSize, candidates.size())).toArray(String[]::new);
+        }
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < length && a.charAt(i) == b.charAt(i)) i++;
+        return i;
+    }
+
+    private static final class Node {
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+        private static final String[] NO_TERMS = new String[0];
+
+        private String label;
+        private String term;
+        // Children sorted by the first character of their label
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+        private String[] top = NO_TERMS;
+
+        private Node(String label) {
+            this.label = label;
+        }
+
+        private Node child(char key) {
+            int index = Arrays.binarySearch(keys, key);
+            return index >= 0 ? children[index] : null;
+        }
+
+        private void addChild(Node child) {
+            int index = -Arrays.binarySearch(keys, child.label.charAt(0)) - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            newKeys[index] = child.label.charAt(0);
+            newChildren[index] = child;
+            System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+            System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+            keys = newKeys;
+            children = newChildren;
+        }
+
+        private void removeChild(Node child) {
+            int index = Arrays.binarySearch(keys, child.label.charAt(0));
+            char[] newKeys = new char[keys.length - 1];
+            Node[] newChildren = new Node[children.length - 1];
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(keys, index + 1, newKeys, index, keys.length - index - 1);
+            System.arraycopy(children, index + 1, newChildren, index, children.length - index - 1);
+            keys = newKeys;
+            children = newChildren;
+        }
+
+        private void replaceChild(Node current, Node replacement) {
+            int index = Arrays.binarySearch(keys, current.label.charAt(0));
+            children[index] = replacement;
+            keys[index] = replacement.label.charAt(0);
+        }
+    }
+}
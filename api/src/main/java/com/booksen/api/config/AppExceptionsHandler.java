@@ -2,9 +2,11 @@ package com.booksen.api.config;
 
 import com.booksen.api.model.ExceptionPattern;
 import com.booksen.api.model.Response;
+import com.booksen.api.model.TooManyRequestsException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.FieldError;
@@ -127,6 +129,14 @@ public class AppExceptionsHandler {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(response);
     }
 
+    @ExceptionHandler(TooManyRequestsException.class)
+    public ResponseEntity<Response<Map<String, String>>> handleTooManyRequests(TooManyRequestsException ex) {
+        ResponseEntity<Response<Map<String, String>>> response = handleGlobalException(ex);
+        return ResponseEntity.status(response.getStatusCode())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(response.getBody());
+    }
+
     @ResponseStatus
     @ExceptionHandler(Exception.class)
     public ResponseEntity<Response<Map<String, String>>> handleGlobalException(Exception ex) {
@@ -2,6 +2,7 @@ package com.booksen.api.config;
 
 import com.booksen.api.user.UserRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -18,6 +19,9 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 public class ApplicationConfig {
     private final UserRepository repository;
 
+    @Value("${application.security.password.bcrypt-strength}")
+    private int bcryptStrength;
+
     @Bean
     public UserDetailsService userDetailsService() {
         return username -> repository.findUserByEmail(username)
@@ -34,7 +38,7 @@ public class ApplicationConfig {
 
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        return new BCryptPasswordEncoder(bcryptStrength);
     }
 
     @Bean
@@ -0,0 +1,100 @@
+package com.booksen.api.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+@EnableScheduling
+public class AsyncConfiguration {
+
+    /*
+     * Bounded pool for file work (writing covers, cleaning them up) kept off the request threads.
+     * When the queue is full the submitting thread runs the task itself, which slows producers down instead of dropping work.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor mediaTaskExecutor(
+            @Value("${application.media.executor.pool-size}") int poolSize,
+            @Value("${application.media.executor.queue-capacity}") int queueCapacity
+    ) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("media-");
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        return executor;
+    }
+
+    /*
+     * Moves staged covers into the uploads directory. Unlike mediaTaskExecutor it never runs work on the caller:
+     * a full queue leaves the cover pending and the retry sweep of CoverIngestionService submits it again later.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor coverIngestionExecutor(
+            @Value("${application.media.ingestion.pool-size}") int poolSize,
+            @Value("${application.media.ingestion.queue-capacity}") int queueCapacity
+    ) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("cover-ingestion-");
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        return executor;
+    }
+
+    /*
+     * BCrypt work of logins, registrations and password changes, see PasswordHasher.
+     * No caller-runs here: a full queue is shed with a 429 so a login storm cannot take over the request threads.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor passwordHashingExecutor(
+            @Value("${application.security.password.pool-size}") int poolSize,
+            @Value("${application.security.password.queue-capacity}") int queueCapacity
+    ) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("password-hashing-");
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        return executor;
+    }
+
+    /*
+     * One thread per running import job, at most max-queued-jobs more wait in the queue.
+     * Beyond that a new import is refused with a 429 before its file is staged, see BooksImportService.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor importJobExecutor(
+            @Value("${application.books.import.max-concurrent-jobs}") int maxConcurrentJobs,
+            @Value("${application.books.import.max-queued-jobs}") int maxQueuedJobs
+    ) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("import-job-");
+        executor.setCorePoolSize(maxConcurrentJobs);
+        executor.setMaxPoolSize(maxConcurrentJobs);
+        executor.setQueueCapacity(maxQueuedJobs);
+        return executor;
+    }
+
+    // Batch writes of the import jobs, each job keeps at most max-in-flight-batches of them queued or running
+    @Bean
+    public ThreadPoolTaskExecutor importBatchExecutor(
+            @Value("${application.books.import.max-concurrent-jobs}") int maxConcurrentJobs,
+            @Value("${application.books.import.max-in-flight-batches}") int maxInFlightBatches
+    ) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("import-batch-");
+        executor.setCorePoolSize(maxInFlightBatches);
+        executor.setMaxPoolSize(maxInFlightBatches);
+        executor.setQueueCapacity(maxConcurrentJobs * maxInFlightBatches);
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        return executor;
+    }
+}
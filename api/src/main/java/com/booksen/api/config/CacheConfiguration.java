@@ -0,0 +1,84 @@
+package com.booksen.api.config;
+
+import com.booksen.api.media.CachedMedia;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+// In-process caches, their hit/miss/eviction stats are published by actuator under cache.* metrics
+@Configuration
+public class CacheConfiguration {
+    public static final String BOOKS_CACHE = "books";
+    public static final String BOOK_FILTERS_CACHE = "bookFilters";
+    public static final String MEDIA_CACHE = "media";
+    public static final String VERIFIED_TOKENS_CACHE = "verifiedTokens";
+
+    @Bean
+    public CacheManager cacheManager(
+            @Value("${application.cache.books.maximum-size}") long booksMaximumSize,
+            @Value("${application.cache.books.ttl}") Duration booksTtl,
+            @Value("${application.cache.book-filters.maximum-size}") long bookFiltersMaximumSize,
+            @Value("${application.cache.book-filters.ttl}") Duration bookFiltersTtl,
+            @Value("${application.cache.media.max-bytes}") long mediaMaxBytes,
+            @Value("${application.cache.verified-tokens.maximum-size}") long verifiedTokensMaximumSize
+    ) {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        // Only the caches registered below exist, unknown names are not created on the fly
+        cacheManager.setCacheNames(List.of());
+        cacheManager.setAllowNullValues(false);
+
+        cacheManager.registerCustomCache(BOOKS_CACHE, Caffeine.newBuilder()
+                .maximumSize(booksMaximumSize)
+                .expireAfterWrite(booksTtl)
+                .recordStats()
+                .build());
+        cacheManager.registerCustomCache(BOOK_FILTERS_CACHE, Caffeine.newBuilder()
+                .maximumSize(bookFiltersMaximumSize)
+                .expireAfterWrite(bookFiltersTtl)
+                .recordStats()
+                .build());
+        // Bounded by bytes: Caffeine's frequency sketch keeps popular images over a burst of one-off requests
+        cacheManager.registerCustomCache(MEDIA_CACHE, Caffeine.newBuilder()
+                .maximumWeight(mediaMaxBytes)
+                .weigher((Object key, Object value) -> ((CachedMedia) value).weight())
+                .recordStats()
+                .build());
+        // Each token is kept until its own expiry, past it the signature check would fail anyway
+        cacheManager.registerCustomCache(VERIFIED_TOKENS_CACHE, Caffeine.newBuilder()
+                .maximumSize(verifiedTokensMaximumSize)
+                .expireAfter(new Expiry<Object, Object>() {
+                    @Override
+                    public long expireAfterCreate(Object key, Object value, long currentTime) {
+                        return untilExpiry((Jwt) value).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Object key, Object value, long currentTime, long currentDuration) {
+                        return untilExpiry((Jwt) value).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterRead(Object key, Object value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build());
+        return cacheManager;
+    }
+
+    private static Duration untilExpiry(Jwt jwt) {
+        if (jwt.getExpiresAt() == null) return Duration.ZERO;
+        Duration remaining = Duration.between(Instant.now(), jwt.getExpiresAt());
+        return remaining.isNegative() ? Duration.ZERO : remaining;
+    }
+}
@@ -0,0 +1,224 @@
+package com.booksen.api.config;
+
+import com.booksen.api.books.BookChangedEvent;
+import com.booksen.api.books.Books;
+import com.booksen.api.books.CatalogVersion;
+import com.booksen.api.books.CatalogVersionChangedEvent;
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDateTime;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/*
+ * Relays the writes made by every replica on the books collection and the catalog version counter as local events,
+ * so each node keeps its in-process caches in sync without talking to the other nodes.
+ * The resume token of each stream is persisted per node, a restarted node picks up where it stopped.
+ * Change streams need a replica set (a single-node one is enough), see docker-compose.replica.yml.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "application.cache.invalidation.change-streams.enabled", havingValue = "true")
+public class ChangeStreamInvalidationListener implements SmartLifecycle {
+    private static final String TOKENS_COLLECTION = "change_stream_tokens";
+    private static final Set<Integer> HISTORY_LOST_CODES = Set.of(260, 280, 286);
+    private static final List<String> WATCHED_OPERATIONS = List.of(
+            OperationType.INSERT.getValue(),
+            OperationType.UPDATE.getValue(),
+            OperationType.REPLACE.getValue(),
+            OperationType.DELETE.getValue()
+    );
+
+    private final MongoTemplate mongoTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final String nodeId;
+    private final Duration tokenFlushInterval;
+    private final Duration retryDelay;
+
+    private ExecutorService executor;
+    private volatile boolean running;
+
+    public ChangeStreamInvalidationListener(
+            MongoTemplate mongoTemplate,
+            ApplicationEventPublisher eventPublisher,
+            @Value("${application.cache.invalidation.node-id}") String nodeId,
+            @Value("${application.cache.invalidation.change-streams.token-flush-interval}") Duration tokenFlushInterval,
+            @Value("${application.cache.invalidation.change-streams.retry-delay}") Duration retryDelay
+    ) {
+        this.mongoTemplate = mongoTemplate;
+        this.eventPublisher = eventPublisher;
+        this.nodeId = nodeId;
+        this.tokenFlushInterval = tokenFlushInterval;
+        this.retryDelay = retryDelay;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        executor = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "change-stream");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.submit(() -> watch(mongoTemplate.getCollectionName(Books.class), this::onBookChange,
+                () -> eventPublisher.publishEvent(BookChangedEvent.all())));
+        executor.submit(() -> watch(CatalogVersion.COLLECTION, change -> eventPublisher.publishEvent(new CatalogVersionChangedEvent()),
+                () -> eventPublisher.publishEvent(new CatalogVersionChangedEvent())));
+        log.info("Listening to change streams as node {}", nodeId);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void onBookChange(ChangeStreamDocument<Document> change) {
+        String id = documentId(change);
+        if (change.getOperationType() == OperationType.DELETE || change.getFullDocument() == null) {
+            eventPublisher.publishEvent(BookChangedEvent.deleted(id));
+            return;
+        }
+        Books book = mongoTemplate.getConverter().read(Books.class, change.getFullDocument());
+        eventPublisher.publishEvent(BookChangedEvent.saved(book));
+    }
+
+    private void watch(String collection, Consumer<ChangeStreamDocument<Document>> handler, Runnable onHistoryLost) {
+        while (running) {
+            BsonDocument resumeToken = loadResumeToken(collection);
+            var changeStream = mongoTemplate.getCollection(collection)
+                    .watch(List.of(Aggregates.match(Filters.in("operationType", WATCHED_OPERATIONS))))
+                    .fullDocument(FullDocument.UPDATE_LOOKUP);
+            if (resumeToken != null) changeStream = changeStream.resumeAfter(resumeToken);
+
+            try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = changeStream.cursor()) {
+                Instant lastFlush = Instant.now();
+                BsonDocument pendingToken = null;
+
+                while (running) {
+                    // Waits at most the server await time, so stop() is noticed quickly
+                    ChangeStreamDocument<Document> change = cursor.tryNext();
+                    if (change != null) handle(collection, change, handler, onHistoryLost);
+
+                    BsonDocument token = cursor.getResumeToken();
+                    if (token != null && !token.equals(resumeToken)) pendingToken = token;
+
+                    // Replaying a few events after a restart is harmless, so tokens are saved at most once per interval
+                    if (pendingToken != null && Instant.now().isAfter(lastFlush.plus(tokenFlushInterval))) {
+                        saveResumeToken(collection, pendingToken);
+                        resumeToken = pendingToken;
+                        pendingToken = null;
+                        lastFlush = Instant.now();
+                    }
+                }
+
+                if (pendingToken != null) saveResumeToken(collection, pendingToken);
+            } catch (MongoCommandException e) {
+                if (HISTORY_LOST_CODES.contains(e.getErrorCode())) {
+                    // The oplog no longer holds our position: start over from now and drop everything cached
+                    log.warn("Resume token of {} is no longer valid, invalidating all cached entries", collection);
+                    deleteResumeToken(collection);
+                    onHistoryLost.run();
+                } else {
+                    log.error("Change stream on {} failed: {}", collection, e.getMessage(), e);
+                    pause();
+                }
+            } catch (RuntimeException e) {
+                // Anything else reopens the stream from the last saved token rather than ending the task unnoticed
+                log.error("Change stream on {} failed: {}", collection, e.getMessage(), e);
+                pause();
+            }
+        }
+    }
+
+    /*
+     * A change that cannot be mapped, or a listener that throws, must not stop the stream.
+     * The change is skipped, and since a cache may now be missing its invalidation everything cached is dropped.
+     */
+    private void handle(String collection, ChangeStreamDocument<Document> change,
+                        Consumer<ChangeStreamDocument<Document>> handler, Runnable onHistoryLost) {
+        try {
+            handler.accept(change);
+        } catch (RuntimeException e) {
+            log.error("Failed to apply a change of {} ({}), invalidating all cached entries: {}",
+                    collection, change.getOperationType(), e.getMessage(), e);
+            try {
+                onHistoryLost.run();
+            } catch (RuntimeException again) {
+                log.error("Failed to invalidate the cached entries of {}: {}", collection, again.getMessage(), again);
+            }
+        }
+    }
+
+    private String documentId(ChangeStreamDocument<Document> change) {
+        var id = change.getDocumentKey().get("_id");
+        return id.isObjectId() ? id.asObjectId().getValue().toHexString() : id.asString().getValue();
+    }
+
+    private BsonDocument loadResumeToken(String collection) {
+        BsonDocument stored = tokens().find(Filters.eq("_id", tokenKey(collection))).first();
+        return stored != null ? stored.getDocument("token") : null;
+    }
+
+    private void saveResumeToken(String collection, BsonDocument token) {
+        BsonDocument stored = new BsonDocument("_id", new BsonString(tokenKey(collection)))
+                .append("token", token)
+                .append("updatedAt", new BsonDateTime(System.currentTimeMillis()));
+        tokens().replaceOne(Filters.eq("_id", tokenKey(collection)), stored, new ReplaceOptions().upsert(true));
+    }
+
+    private void deleteResumeToken(String collection) {
+        tokens().deleteOne(Filters.eq("_id", tokenKey(collection)));
+    }
+
+    private MongoCollection<BsonDocument> tokens() {
+        return mongoTemplate.getDb().getCollection(TOKENS_COLLECTION, BsonDocument.class);
+    }
+
+    private String tokenKey(String collection) {
+        return nodeId + ":" + collection;
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(retryDelay.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
@@ -38,8 +38,11 @@ public class SecurityConfiguration {
                 .csrf(AbstractHttpConfigurer::disable)
                 .authorizeHttpRequests(req ->
                         req
-                                .requestMatchers(new String[]{"/api/v1/user/auth/**", "/api/v1/user/avatar/**", "/api/v1/books/cover/**"}).permitAll()
+                                .requestMatchers("/api/v1/media/admin/**").hasRole("ADMIN")
+                                .requestMatchers(new String[]{"/api/v1/user/auth/**", "/api/v1/user/avatar/**", "/api/v1/books/cover/**", "/api/v1/media/**"}).permitAll()
                                 .requestMatchers("/api/v1/user/admin/**").hasRole("ADMIN")
+                                .requestMatchers("/actuator/**").hasRole("ADMIN")
+                                .requestMatchers("/api/v1/books/import/**").hasRole("ADMIN")
                                 .anyRequest()
                                 .authenticated()
                 )
@@ -31,7 +31,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             @NonNull HttpServletResponse response,
             @NonNull FilterChain filterChain
     ) throws ServletException, IOException {
-        if (request.getServletPath().contains("/api/v1/user/auth") || request.getServletPath().contains("/api/v1/user/avatar") || request.getServletPath().contains("/api/v1/books/cover")) {
+        if (isPublic(request.getServletPath())) {
             filterChain.doFilter(request, response);
             return;
         }
@@ -53,6 +53,12 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
 
+    // Stored images are served to anonymous <img> requests, only the media migrations need a principal
+    private static boolean isPublic(String path) {
+        if (path.startsWith("/api/v1/media/")) return !path.startsWith("/api/v1/media/admin/");
+        return path.contains("/api/v1/user/auth") || path.contains("/api/v1/user/avatar") || path.contains("/api/v1/books/cover");
+    }
+
     private void setErrorResponse(HttpServletResponse response, Response<Object> errorResponse) throws IOException {
         response.setStatus(HttpStatus.UNAUTHORIZED.value());
         response.setContentType(MediaType.APPLICATION_JSON_VALUE);
@@ -1,34 +1,62 @@
 
 package com.booksen.api.config.jwt;
 
+import com.booksen.api.config.CacheConfiguration;
 import com.booksen.api.model.Response;
+import com.booksen.api.model.Role;
 import com.booksen.api.user.User;
-import com.booksen.api.user.UserRepository;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.oauth2.jwt.*;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 
 @Service
 @Slf4j
-@RequiredArgsConstructor
 public class JwtService {
     @Value("${application.security.jwt.expiration}")
     private long expiration;
 
+    // Builds the principal from the verified claims instead of loading the user on every request
+    @Value("${application.security.jwt.stateless-principal}")
+    private boolean statelessPrincipal;
+
     private final JwtEncoder jwtEncoder;
-    private final UserRepository userRepository;
     private final JwtDecoder jwtDecoder;
     private final UserDetailsService userDetailsService;
-
+    private final TokenRevocations tokenRevocations;
+    private final SigningKeys signingKeys;
+    // Token hash -> verified token: a client sending the same token again skips parsing and the signature check
+    private final Cache verifiedTokens;
+
+    public JwtService(
+            JwtEncoder jwtEncoder,
+            JwtDecoder jwtDecoder,
+            UserDetailsService userDetailsService,
+            TokenRevocations tokenRevocations,
+            SigningKeys signingKeys,
+            CacheManager cacheManager
+    ) {
+        this.jwtEncoder = jwtEncoder;
+        this.jwtDecoder = jwtDecoder;
+        this.userDetailsService = userDetailsService;
+        this.tokenRevocations = tokenRevocations;
+        this.signingKeys = signingKeys;
+        this.verifiedTokens = Objects.requireNonNull(cacheManager.getCache(CacheConfiguration.VERIFIED_TOKENS_CACHE));
+    }
 
     public String generateToken(UserDetails userDetails) {
         Instant now = Instant.now();
@@ -39,6 +67,7 @@ public class JwtService {
             extraClaims.put("email", user.getEmail());
             extraClaims.put("role", user.getRole().name());
             extraClaims.put("avatar", user.getAvatar());
+            extraClaims.put("tokenVersion", user.getTokenVersion());
         }
 
         JwtClaimsSet claims = JwtClaimsSet.builder()
@@ -49,7 +78,8 @@ public class JwtService {
                 .claim("user", extraClaims)
                 .build();
 
-        return jwtEncoder.encode(JwtEncoderParameters.from(claims)).getTokenValue();
+        JwsHeader header = JwsHeader.with(signingKeys.signingAlgorithm()).build();
+        return jwtEncoder.encode(JwtEncoderParameters.from(header, claims)).getTokenValue();
     }
 
     public JwtValidationResponse validateJwt(String authHeader) {
@@ -59,19 +89,26 @@ public class JwtService {
 
         try {
             String token = authHeader.substring(7);
-            Jwt jwt = jwtDecoder.decode(token);
+            Jwt jwt = decode(token);
 
             if (isTokenExpired(jwt)) {
                 return buildResponse( "Token has expired", null);
             }
 
-            String email = jwt.getSubject();
-            UserDetails userDetails = userDetailsService.loadUserByUsername(email);
+            Map<String, Object> claims = jwt.getClaimAsMap("user");
+            if (claims == null || claims.get("id") == null) {
+                return buildResponse("Token carries no user", null);
+            }
 
-            if (!userRepository.existsByEmail(email)) {
-                return buildResponse("User not found", null);
+            String userId = (String) claims.get("id");
+            long tokenVersion = claims.get("tokenVersion") instanceof Number version ? version.longValue() : 0L;
+            if (tokenRevocations.isRevoked(userId, tokenVersion)) {
+                return buildResponse("Token has been revoked", null);
             }
 
+            UserDetails userDetails = statelessPrincipal
+                    ? toPrincipal(jwt.getSubject(), claims, tokenVersion)
+                    : userDetailsService.loadUserByUsername(jwt.getSubject());
             return this.buildResponse(null, userDetails);
         } catch (Exception e) {
             log.error("JWT verification failed: {}", e.getMessage());
@@ -79,6 +116,38 @@ public class JwtService {
         }
     }
 
+    private Jwt decode(String token) {
+        String key = tokenHash(token);
+        Jwt cached = verifiedTokens.get(key, Jwt.class);
+        if (cached != null) return cached;
+
+        Jwt jwt = jwtDecoder.decode(token);
+        verifiedTokens.put(key, jwt);
+        return jwt;
+    }
+
+    // Keeps the cache keys short and the tokens themselves out of the heap dumps
+    private static String tokenHash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // The claims were signed by this application when the token was issued, revocation covers what changed since
+    private User toPrincipal(String email, Map<String, Object> claims, long tokenVersion) {
+        return User.builder()
+                .id((String) claims.get("id"))
+                .name((String) claims.get("name"))
+                .email(email)
+                .role(Role.valueOf((String) claims.get("role")))
+                .avatar((String) claims.get("avatar"))
+                .tokenVersion(tokenVersion)
+                .build();
+    }
+
     private boolean isTokenExpired(Jwt jwt) {
         return jwt.getExpiresAt() == null || jwt.getExpiresAt().isBefore(Instant.now());
     }
@@ -0,0 +1,369 @@
+package com.booksen.api.config.jwt;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.oauth2.jose.jws.SignatureAlgorithm;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/*
+ * Signing keys (RSA or P-256 EC) shared by every replica through the jwk_keys collection, so a token issued by one node
+ * verifies on all of them and survives restarts. Each node holds an immutable snapshot of the keys,
+ * swapped by the scheduled refresh: verifying a token reads memory only.
+ * A new key is written publish-ahead before it signs anything, every node knows it by the time its tokens arrive.
+ * Nodes rotate on their own schedule but only one of them writes the successor of a key: each key names the key it
+ * replaces under a unique index, the nodes that lose that insert read the winner's key instead.
+ * A key is dropped once the tokens signed with it have expired.
+ * Changing the algorithm rotates to a key of the new type, tokens signed with the previous one stay valid meanwhile.
+ * The algorithm keys are created with is shared too: each node publishes its configured one when it starts, the most
+ * recently started node wins. During a rolling change the nodes still on the old configuration follow the new one
+ * instead of rotating back to their own, so the keys do not flip between the two types at every refresh.
+ */
+@Component
+@Slf4j
+public class SigningKeys {
+    private static final String COLLECTION = "jwk_keys";
+    // Predecessor of each key, unique: two nodes rotating from the same key cannot both write a successor
+    private static final String REPLACES = "replaces";
+    private static final String FIRST_KEY = "none";
+    private static final String SETTINGS_COLLECTION = "jwk_settings";
+    private static final String ALGORITHM_ID = "algorithm";
+    private static final int RSA_KEY_SIZE = 2048;
+    // EdDSA has no JWS algorithm in Spring Security's encoder, so only these two can sign
+    public static final Set<JWSAlgorithm> ALGORITHMS = Set.of(JWSAlgorithm.RS256, JWSAlgorithm.ES256);
+    private static final int IV_BYTES = 12;
+    // Wrapping key derivation: PBKDF2 stretches a guessable secret, the salt keeps its output specific to this use
+    private static final String KDF = "pbkdf2-sha256";
+    private static final int KDF_ITERATIONS = 600_000;
+    private static final byte[] KDF_SALT = "book-sen/jwk_keys/wrapping-key".getBytes(StandardCharsets.UTF_8);
+    // A token with an unknown kid reloads the keys at most this often, in case a key was created since the last refresh
+    private static final Duration MISS_RELOAD_INTERVAL = Duration.ofSeconds(10);
+
+    private final MongoTemplate mongoTemplate;
+    private final String keyIdPrefix;
+    private final JWSAlgorithm algorithm;
+    private final Instant startedAt = Instant.now();
+    private final Duration rotationPeriod;
+    private final Duration publishAhead;
+    private final Duration tokenLifetime;
+    private final SecretKeySpec wrappingKey;
+    // Keys wrapped before PBKDF2 was used have no kdf field, they are read with a bare SHA-256 of the secret
+    private final SecretKeySpec legacyWrappingKey;
+    private final SecureRandom random = new SecureRandom();
+
+    private volatile Snapshot snapshot;
+    private volatile Instant lastMissReload = Instant.EPOCH;
+    private boolean indexed;
+
+    public SigningKeys(
+            MongoTemplate mongoTemplate,
+            @Value("${application.security.jwt.key-id}") String keyIdPrefix,
+            @Value("${application.security.jwt.algorithm}") String algorithm,
+            @Value("${application.security.jwt.keys.rotation-period}") Duration rotationPeriod,
+            @Value("${application.security.jwt.keys.publish-ahead}") Duration publishAhead,
+            @Value("${application.security.jwt.expiration}") long tokenLifetimeSeconds,
+            @Value("${application.security.jwt.keys.encryption-secret}") String encryptionSecret
+    ) {
+        this.mongoTemplate = mongoTemplate;
+        this.keyIdPrefix = keyIdPrefix;
+        this.algorithm = JWSAlgorithm.parse(algorithm);
+        if (!ALGORITHMS.contains(this.algorithm)) {
+            throw new IllegalArgumentException("Unsupported JWT algorithm: " + algorithm + ". Allowed: [RS256, ES256]");
+        }
+        this.rotationPeriod = rotationPeriod;
+        this.publishAhead = publishAhead;
+        this.tokenLifetime = Duration.ofSeconds(tokenLifetimeSeconds);
+        boolean encrypted = encryptionSecret != null && !encryptionSecret.isBlank();
+        this.wrappingKey = encrypted ? deriveKey(encryptionSecret) : null;
+        this.legacyWrappingKey = encrypted ? legacyKey(encryptionSecret) : null;
+        if (!encrypted) {
+            log.warn("********************************************************************************");
+            log.warn("JWT_KEY_ENCRYPTION_SECRET is not set: JWT private keys are stored in clear in {}.", COLLECTION);
+            log.warn("Anyone able to read that collection can sign tokens. Set it outside of development.");
+            log.warn("********************************************************************************");
+        }
+    }
+
+    // Only the key currently used to sign, so the encoder never has to choose
+    public JWKSource<SecurityContext> signingSource() {
+        return (selector, context) -> selector.select(current().signing());
+    }
+
+    public JWKSource<SecurityContext> verificationSource() {
+        return (selector, context) -> {
+            List<JWK> keys = selector.select(current().verification());
+            if (keys.isEmpty() && Instant.now().isAfter(lastMissReload.plus(MISS_RELOAD_INTERVAL))) {
+                lastMissReload = Instant.now();
+                load(false);
+                keys = selector.select(current().verification());
+            }
+            return keys;
+        };
+    }
+
+    // Algorithm of the key currently signing, which may still be the previous one right after a change of algorithm
+    public SignatureAlgorithm signingAlgorithm() {
+        return SignatureAlgorithm.from(algorithmOf(current().signing().getKeys().get(0)).getName());
+    }
+
+    @Scheduled(fixedDelayString = "${application.security.jwt.keys.refresh-interval}")
+    public void refresh() {
+        load(true);
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            load(true);
+            current = snapshot;
+        }
+        return current;
+    }
+
+    private synchronized void load(boolean rotate) {
+        if (!indexed) {
+            // Sparse: keys written before rotation was coordinated replace nothing
+            mongoTemplate.indexOps(COLLECTION).ensureIndex(new Index().on(REPLACES, Sort.Direction.ASC).unique().sparse());
+            indexed = true;
+            publishAlgorithm();
+        }
+
+        Instant now = Instant.now();
+        List<StoredKey> keys = readKeys();
+        if (rotate) {
+            JWSAlgorithm shared = sharedAlgorithm();
+            StoredKey newest = keys.stream().max((a, b) -> a.createdAt().compareTo(b.createdAt())).orElse(null);
+            if (newest == null || newest.createdAt().plus(rotationPeriod).isBefore(now) || !algorithmOf(newest.key()).equals(shared)) {
+                // The very first key is needed right away, later ones wait for the other nodes to load them
+                StoredKey created = create(now, keys.isEmpty() ? now : now.plus(publishAhead),
+                        newest == null ? FIRST_KEY : newest.key().getKeyID(), shared);
+                if (created != null) {
+                    keys.add(created);
+                } else {
+                    keys = readKeys();
+                }
+            }
+        }
+        if (keys.isEmpty()) {
+            if (snapshot == null) throw new IllegalStateException("No JWT signing key available");
+            return;
+        }
+
+        // A key signs until the next one becomes active (give or take a refresh), its tokens stay valid for a token lifetime after that
+        List<StoredKey> kept = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            boolean expired = i + 1 < keys.size()
+                    && keys.get(i + 1).activeFrom().plus(publishAhead).plus(tokenLifetime).isBefore(now);
+            if (expired) {
+                mongoTemplate.remove(Query.query(Criteria.where("_id").is(keys.get(i).key().getKeyID())), COLLECTION);
+                log.info("Dropped expired signing key {}", keys.get(i).key().getKeyID());
+            } else {
+                kept.add(keys.get(i));
+            }
+        }
+
+        StoredKey signing = kept.get(0);
+        for (StoredKey key : kept) {
+            if (!key.activeFrom().isAfter(now)) signing = key;
+        }
+        List<JWK> verification = kept.stream().map(key -> (JWK) key.key().toPublicJWK()).toList();
+
+        Snapshot previous = snapshot;
+        snapshot = new Snapshot(new JWKSet(signing.key()), new JWKSet(verification));
+        if (previous == null || !previous.signing().getKeys().get(0).getKeyID().equals(signing.key().getKeyID())) {
+            log.info("Signing JWTs with key {}, {} keys accepted", signing.key().getKeyID(), verification.size());
+        }
+    }
+
+    // Records the configured algorithm unless a node started after this one already recorded its own
+    private void publishAlgorithm() {
+        try {
+            mongoTemplate.upsert(
+                    Query.query(Criteria.where("_id").is(ALGORITHM_ID).and("since").lt(Date.from(startedAt))),
+                    new Update().set("algorithm", algorithm.getName()).set("since", Date.from(startedAt)),
+                    SETTINGS_COLLECTION
+            );
+        } catch (DuplicateKeyException e) {
+            // The recorded one is newer: the upsert found nothing to update and could not insert a second document
+        }
+    }
+
+    private JWSAlgorithm sharedAlgorithm() {
+        Document setting = mongoTemplate.findById(ALGORITHM_ID, Document.class, SETTINGS_COLLECTION);
+        if (setting == null) return algorithm;
+
+        JWSAlgorithm shared = JWSAlgorithm.parse(setting.getString("algorithm"));
+        if (!ALGORITHMS.contains(shared)) return algorithm;
+        if (!shared.equals(algorithm)) {
+            log.debug("Creating {} keys as recorded by the most recently started node, {} is configured here", shared, algorithm);
+        }
+        return shared;
+    }
+
+    private List<StoredKey> readKeys() {
+        List<StoredKey> keys = new ArrayList<>();
+        Query query = new Query().with(Sort.by("activeFrom", "_id"));
+        for (Document document : mongoTemplate.find(query, Document.class, COLLECTION)) {
+            try {
+                keys.add(read(document));
+            } catch (ParseException | GeneralSecurityException | RuntimeException e) {
+                log.error("Skipping unreadable signing key {}: {}", document.get("_id"), e.getMessage());
+            }
+        }
+        return keys;
+    }
+
+    // Null when another node wrote the successor of replaces first
+    private StoredKey create(Instant now, Instant activeFrom, String replaces, JWSAlgorithm algorithm) {
+        try {
+            // Random, two keys created in the same second on different nodes must not share a kid
+            String keyId = keyIdPrefix + "-" + UUID.randomUUID();
+            JWK key;
+            if (JWSAlgorithm.ES256.equals(algorithm)) {
+                KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+                generator.initialize(new ECGenParameterSpec("secp256r1"));
+                KeyPair keyPair = generator.generateKeyPair();
+                key = new ECKey.Builder(Curve.P_256, (ECPublicKey) keyPair.getPublic())
+                        .privateKey((ECPrivateKey) keyPair.getPrivate())
+                        .keyUse(KeyUse.SIGNATURE)
+                        .algorithm(algorithm)
+                        .keyID(keyId)
+                        .build();
+            } else {
+                KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+                generator.initialize(RSA_KEY_SIZE);
+                KeyPair keyPair = generator.generateKeyPair();
+                key = new RSAKey.Builder((RSAPublicKey) keyPair.getPublic())
+                        .privateKey(keyPair.getPrivate())
+                        .keyUse(KeyUse.SIGNATURE)
+                        .algorithm(algorithm)
+                        .keyID(keyId)
+                        .build();
+            }
+
+            try {
+                mongoTemplate.insert(new Document("_id", key.getKeyID())
+                        .append("jwk", wrap(key.toJSONString()))
+                        .append("encrypted", wrappingKey != null)
+                        .append("kdf", wrappingKey != null ? KDF : null)
+                        .append(REPLACES, replaces)
+                        .append("createdAt", Date.from(now))
+                        .append("activeFrom", Date.from(activeFrom)), COLLECTION);
+            } catch (DuplicateKeyException e) {
+                log.info("Signing key {} was already replaced by another node", replaces);
+                return null;
+            }
+            log.info("Created signing key {}, active from {}", key.getKeyID(), activeFrom);
+            return new StoredKey(key, now, activeFrom);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not create a JWT signing key", e);
+        }
+    }
+
+    private StoredKey read(Document document) throws ParseException, GeneralSecurityException {
+        String json = document.getBoolean("encrypted", false)
+                ? unwrap(document.getString("jwk"), KDF.equals(document.getString("kdf")) ? wrappingKey : legacyWrappingKey)
+                : document.getString("jwk");
+        return new StoredKey(
+                JWK.parse(json),
+                document.getDate("createdAt").toInstant(),
+                document.getDate("activeFrom").toInstant()
+        );
+    }
+
+    // Private keys are stored encrypted with AES-GCM when an encryption secret is configured
+    private String wrap(String json) throws GeneralSecurityException {
+        if (wrappingKey == null) return json;
+
+        byte[] iv = new byte[IV_BYTES];
+        random.nextBytes(iv);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, wrappingKey, new GCMParameterSpec(128, iv));
+        byte[] encrypted = cipher.doFinal(json.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(iv) + ":" + Base64.getEncoder().encodeToString(encrypted);
+    }
+
+    private static String unwrap(String stored, SecretKeySpec wrappingKey) throws GeneralSecurityException {
+        if (wrappingKey == null) throw new GeneralSecurityException("Key is encrypted but no encryption secret is configured");
+
+        String[] parts = stored.split(":", 2);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, wrappingKey, new GCMParameterSpec(128, Base64.getDecoder().decode(parts[0])));
+        return new String(cipher.doFinal(Base64.getDecoder().decode(parts[1])), StandardCharsets.UTF_8);
+    }
+
+    // Keys written before the algorithm was configurable are RSA keys without alg
+    private static JWSAlgorithm algorithmOf(JWK key) {
+        if (key.getAlgorithm() != null) return JWSAlgorithm.parse(key.getAlgorithm().getName());
+        return key instanceof ECKey ? JWSAlgorithm.ES256 : JWSAlgorithm.RS256;
+    }
+
+    private static SecretKeySpec deriveKey(String secret) {
+        try {
+            PBEKeySpec spec = new PBEKeySpec(secret.toCharArray(), KDF_SALT, KDF_ITERATIONS, 256);
+            try {
+                byte[] derived = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+                return new SecretKeySpec(derived, "AES");
+            } finally {
+                spec.clearPassword();
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static SecretKeySpec legacyKey(String secret) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(secret.getBytes(StandardCharsets.UTF_8));
+            return new SecretKeySpec(hash, "AES");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record StoredKey(JWK key, Instant createdAt, Instant activeFrom) {}
+
+    private record Snapshot(JWKSet signing, JWKSet verification) {}
+}
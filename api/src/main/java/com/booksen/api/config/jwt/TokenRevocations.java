@@ -0,0 +1,142 @@
+package com.booksen.api.config.jwt;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Which tokens are no longer accepted, answered from memory so an authenticated request costs no database round-trip.
+ * A token carries the token version of its user; revoking stores the lowest version still valid for that user.
+ * Revocations are appended to a collection that every node polls for new entries, entries expire with the tokens they revoke.
+ * Entries are ordered by a sequence number taken from a shared counter, no node's clock is involved. A number can be
+ * taken before an entry that is still being inserted: a missing number holds the poll back until the entry shows up,
+ * or for GAP_WAIT_MILLIS of this node's time when its writer failed.
+ */
+@Component
+@Slf4j
+public class TokenRevocations {
+    private static final String COLLECTION = "token_revocations";
+    private static final String SEQUENCE_COLLECTION = "token_revocation_sequence";
+    private static final String SEQUENCE_ID = "revocations";
+    // How long a missing sequence number is waited for, far longer than a counter increment and its insert
+    private static final long GAP_WAIT_MILLIS = 5000;
+
+    private final MongoTemplate mongoTemplate;
+    private final long tokenLifetimeSeconds;
+
+    // Lowest token version still accepted per user, users absent here accept every version
+    private final Map<String, Long> minimumVersions = new ConcurrentHashMap<>();
+    // Every sequence number up to this one is applied or given up on, -1 until the first refresh
+    private long appliedThrough = -1;
+    // Missing sequence numbers above appliedThrough, with the time this node first noticed them
+    private final Map<Long, Long> gaps = new HashMap<>();
+
+    public TokenRevocations(
+            MongoTemplate mongoTemplate,
+            @Value("${application.security.jwt.expiration}") long tokenLifetimeSeconds
+    ) {
+        this.mongoTemplate = mongoTemplate;
+        this.tokenLifetimeSeconds = tokenLifetimeSeconds;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        mongoTemplate.indexOps(COLLECTION)
+                .ensureIndex(new Index().on("at", Sort.Direction.ASC).expire(tokenLifetimeSeconds, TimeUnit.SECONDS));
+        mongoTemplate.indexOps(COLLECTION).ensureIndex(new Index().on("seq", Sort.Direction.ASC));
+        // Entries written before they were numbered, read once until they expire
+        for (Document revocation : mongoTemplate.find(Query.query(Criteria.where("seq").exists(false)), Document.class, COLLECTION)) {
+            apply(revocation.getString("userId"), revocation.get("minimumVersion", Number.class).longValue());
+        }
+        refresh();
+        // Nothing stored yet: only numbers taken from now on are of interest
+        synchronized (this) {
+            if (appliedThrough < 0) appliedThrough = currentSequence();
+        }
+        log.info("Loaded token revocations of {} users", minimumVersions.size());
+    }
+
+    // Every token of userId older than minimumVersion is refused, on this node now and on the others at their next refresh
+    public void revoke(String userId, long minimumVersion) {
+        // Only the TTL index reads the date
+        mongoTemplate.insert(new Document("userId", userId)
+                .append("minimumVersion", minimumVersion)
+                .append("seq", nextSequence())
+                .append("at", new Date()), COLLECTION);
+        apply(userId, minimumVersion);
+    }
+
+    public boolean isRevoked(String userId, long tokenVersion) {
+        Long minimum = minimumVersions.get(userId);
+        return minimum != null && tokenVersion < minimum;
+    }
+
+    @Scheduled(fixedDelayString = "${application.security.jwt.revocation.refresh-interval}")
+    public synchronized void refresh() {
+        long now = System.currentTimeMillis();
+        Query query = Query.query(Criteria.where("seq").gt(appliedThrough)).with(Sort.by("seq"));
+        // Entries past a gap are applied now and read again until the gap closes, applying one twice changes nothing
+        boolean contiguous = true;
+        long previous = appliedThrough;
+        for (Document revocation : mongoTemplate.find(query, Document.class, COLLECTION)) {
+            apply(revocation.getString("userId"), revocation.get("minimumVersion", Number.class).longValue());
+
+            long seq = revocation.get("seq", Number.class).longValue();
+            // Below the first entry read at startup, numbers belong to expired entries
+            if (appliedThrough < 0) appliedThrough = previous = seq - 1;
+            for (long missing = previous + 1; missing < seq; missing++) gaps.putIfAbsent(missing, now);
+            gaps.remove(seq);
+            previous = seq;
+            if (contiguous) {
+                contiguous = gapsClosedOrGivenUp(seq, now);
+                if (contiguous) appliedThrough = seq;
+            }
+        }
+        gaps.keySet().removeIf(missing -> missing <= appliedThrough);
+    }
+
+    private boolean gapsClosedOrGivenUp(long seq, long now) {
+        for (long missing = appliedThrough + 1; missing < seq; missing++) {
+            Long noticed = gaps.get(missing);
+            if (noticed != null && now - noticed < GAP_WAIT_MILLIS) return false;
+        }
+        return true;
+    }
+
+    private long currentSequence() {
+        Document counter = mongoTemplate.findById(SEQUENCE_ID, Document.class, SEQUENCE_COLLECTION);
+        return counter != null ? counter.get("seq", Number.class).longValue() : 0L;
+    }
+
+    private long nextSequence() {
+        Document counter = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(SEQUENCE_ID)),
+                new Update().inc("seq", 1L),
+                FindAndModifyOptions.options().upsert(true).returnNew(true),
+                Document.class,
+                SEQUENCE_COLLECTION
+        );
+        return counter.get("seq", Number.class).longValue();
+    }
+
+    private void apply(String userId, long minimumVersion) {
+        minimumVersions.merge(userId, minimumVersion, Math::max);
+    }
+}
@@ -0,0 +1,15 @@
+package com.booksen.api.dto.books;
+
+import lombok.*;
+
+@Data
+@RequiredArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BatchItemResultDTO {
+    private int index;
+    private String name;
+    private BatchItemStatus status;
+    private String id;
+    private String message;
+}
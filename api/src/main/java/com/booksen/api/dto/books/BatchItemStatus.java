@@ -0,0 +1,9 @@
+package com.booksen.api.dto.books;
+
+public enum BatchItemStatus {
+    CREATED,
+    DUPLICATE,
+    INVALID,
+    FAILED,
+    NOT_FOUND
+}
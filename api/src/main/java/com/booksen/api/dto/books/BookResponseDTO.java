@@ -1,5 +1,6 @@
 package com.booksen.api.dto.books;
 
+import com.booksen.api.model.CoverStatus;
 import lombok.*;
 
 import java.time.LocalDateTime;
@@ -14,6 +15,7 @@ public class BookResponseDTO {
     private String description;
     private String author;
     private String cover;
+    private CoverStatus coverStatus;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 }
\ No newline at end of file
@@ -0,0 +1,14 @@
+package com.booksen.api.dto.books;
+
+import lombok.*;
+
+import java.util.List;
+
+@Data
+@RequiredArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BookSuggestionsDTO {
+    private List<String> names;
+    private List<String> authors;
+}
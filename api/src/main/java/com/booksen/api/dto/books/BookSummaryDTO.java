@@ -0,0 +1,16 @@
+package com.booksen.api.dto.books;
+
+import com.booksen.api.model.CoverStatus;
+import lombok.*;
+
+@Data
+@RequiredArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BookSummaryDTO {
+    private String id;
+    private String name;
+    private String author;
+    private String cover;
+    private CoverStatus coverStatus;
+}
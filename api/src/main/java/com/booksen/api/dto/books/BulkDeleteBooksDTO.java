@@ -0,0 +1,15 @@
+package com.booksen.api.dto.books;
+
+import lombok.*;
+
+import java.util.List;
+
+// Either ids or author selects the books to delete, not both
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BulkDeleteBooksDTO {
+    private List<String> ids;
+    private String author;
+}
@@ -0,0 +1,16 @@
+package com.booksen.api.dto.books;
+
+import lombok.*;
+
+import java.util.List;
+
+@Data
+@RequiredArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BulkResultDTO {
+    private long matched;
+    private long modified;
+    // Only the requested ids that could not be handled, their index is their position in the request
+    private List<BatchItemResultDTO> failures;
+}
@@ -0,0 +1,16 @@
+package com.booksen.api.dto.books;
+
+import lombok.*;
+
+import java.util.List;
+
+// Gives author to the books listed in ids, or to every book currently attributed to fromAuthor
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BulkSetAuthorDTO {
+    private List<String> ids;
+    private String fromAuthor;
+    private String author;
+}
@@ -0,0 +1,16 @@
+package com.booksen.api.dto.books;
+
+import lombok.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Bound from multipart fields named books[0].name, books[0].cover, ...
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class CreateBooksBatchDTO {
+    @Builder.Default
+    private List<CreateUpdateBookDTO> books = new ArrayList<>();
+}
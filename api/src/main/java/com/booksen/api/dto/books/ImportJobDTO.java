@@ -0,0 +1,27 @@
+package com.booksen.api.dto.books;
+
+import com.booksen.api.model.ImportJobStatus;
+import lombok.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@RequiredArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ImportJobDTO {
+    private String id;
+    private String fileName;
+    private String format;
+    private ImportJobStatus status;
+    private long rowsRead;
+    private long inserted;
+    private long rejected;
+    private double rowsPerSecond;
+    private List<String> errors;
+    private String failure;
+    private LocalDateTime createdAt;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+}
@@ -0,0 +1,18 @@
+package com.booksen.api.dto.media;
+
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+@Data
+@RequiredArgsConstructor
+@AllArgsConstructor
+@Builder
+public class LayoutMigrationDTO {
+    private boolean running;
+    private long moved;
+    private long failed;
+    private String failure;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+}
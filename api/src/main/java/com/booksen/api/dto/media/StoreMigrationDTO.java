@@ -0,0 +1,22 @@
+package com.booksen.api.dto.media;
+
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+@Data
+@RequiredArgsConstructor
+@AllArgsConstructor
+@Builder
+public class StoreMigrationDTO {
+    private String from;
+    private String to;
+    private boolean running;
+    private long copied;
+    // Already present in the target store
+    private long skipped;
+    private long failed;
+    private String failure;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+}
@@ -3,15 +3,20 @@ package com.booksen.api.helpers;
 import com.booksen.api.books.Books;
 import com.booksen.api.books.BooksRepository;
 import com.booksen.api.dto.books.BookResponseDTO;
+import com.booksen.api.dto.books.BookSummaryDTO;
 import com.booksen.api.dto.books.CreateUpdateBookDTO;
+import com.booksen.api.model.CoverStatus;
+import com.booksen.api.model.PageCursor;
 import com.booksen.api.model.Response;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -22,6 +27,10 @@ public class BooksHelper {
     private final BooksRepository booksRepository;
     private final FileServices fileServices;
 
+    // Staged covers only exist on the disk of the node that received them
+    @Value("${application.cache.invalidation.node-id}")
+    private String nodeId;
+
     public void prepareForValidation(CreateUpdateBookDTO dto) {
         Optional.ofNullable(dto.getName())
                 .ifPresent(name -> dto.setName(name.toLowerCase()));
@@ -50,17 +59,46 @@ public class BooksHelper {
                 .description(book.getDescription())
                 .author(book.getAuthor())
                 .cover(book.getCover())
+                .coverStatus(coverStatus(book))
                 .createdAt(book.getCreatedAt())
                 .updatedAt(book.getUpdatedAt())
                 .build();
     }
 
+    public BookSummaryDTO toSummaryEntity(Books book) {
+        return BookSummaryDTO.builder()
+                .id(book.getId())
+                .name(book.getName())
+                .author(book.getAuthor())
+                .cover(book.getCover())
+                .coverStatus(coverStatus(book))
+                .build();
+    }
+
+    // Books stored before covers were ingested asynchronously have no status, their file is already in place
+    private CoverStatus coverStatus(Books book) {
+        if (book.getCover() == null) return null;
+        return book.getCoverStatus() != null ? book.getCoverStatus() : CoverStatus.READY;
+    }
+
+    // Strong validator of a single book, it changes with every write since updatedAt is refreshed on update
+    public String toETag(BookResponseDTO book) {
+        long version = book.getUpdatedAt() != null ? book.getUpdatedAt().toInstant(ZoneOffset.UTC).toEpochMilli() : 0L;
+        return String.format("\"%s-%d\"", book.getId(), version);
+    }
+
+    public PageCursor toCursor(Books book) {
+        return new PageCursor(book.getCreatedAt(), book.getId());
+    }
+
     public Books toEntity(CreateUpdateBookDTO dto, String cover) {
         return Books.builder()
                 .name(dto.getName())
                 .author(dto.getAuthor())
                 .description(dto.getDescription())
                 .cover(cover)
+                .coverStatus(cover != null ? CoverStatus.PENDING : null)
+                .coverNodeId(cover != null ? nodeId : null)
                 .updatedAt(LocalDateTime.now())
                 .createdAt(LocalDateTime.now())
                 .build();
@@ -95,13 +133,15 @@ public class BooksHelper {
             try {
 
                 if (entity.getCover() != null) {
-                    Response<Object> responseDeleted = fileServices.deleteOldImage(entity.getCover());
+                    Response<Object> responseDeleted = fileServices.releaseImage(entity.getCover());
                     if (responseDeleted != null) return responseDeleted;
                 }
 
                 // Set the new avatar URL
                 String avatarUrl = (String) response.getData();
                 entity.setCover(avatarUrl);
+                entity.setCoverStatus(CoverStatus.PENDING);
+                entity.setCoverNodeId(nodeId);
             } catch (IOException e) {
                 return new Response<>(HttpStatus.INTERNAL_SERVER_ERROR.value(), "Failed to process avatar", null);
             }
@@ -124,7 +164,7 @@ public class BooksHelper {
                 return fileValidationResponse;
             }
 
-            return new Response<Object>(HttpStatus.OK.value(), fileServices.saveFile(cover), "");
+            return new Response<Object>(HttpStatus.OK.value(), fileServices.stageFile(cover), "");
         } catch (Exception e) {
             return Response.<Object>builder()
                     .status(HttpStatus.BAD_REQUEST.value())
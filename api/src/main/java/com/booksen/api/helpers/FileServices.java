@@ -1,37 +1,85 @@
 package com.booksen.api.helpers;
 
 import com.booksen.api.model.Response;
+import com.booksen.api.model.UnsupportedMediaTypeException;
+import com.booksen.api.model.UploadSizeExceededException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
 @Service
 public class FileServices {
+    private static final int STREAM_BUFFER_BYTES = 64 * 1024;
+    private static final Duration MISS_TTL = Duration.ofSeconds(5);
+    private static final long MISSES_MAXIMUM_SIZE = 10_000;
+    private static final Map<String, String> EXTENSIONS = Map.of(
+            "image/jpeg", ".jpg",
+            "image/png", ".png",
+            "image/gif", ".gif",
+            "image/webp", ".webp"
+    );
+
     private final long maxFileSize;
     private final List<String> allowedContentTypes;
-    private final String baseUploadDirectory;
+    private final String stagingDirectory;
+    // The store images are kept in, and this node's directory: the same store unless a remote one is configured
+    private final MediaStore mediaStore;
+    private final LocalMediaStore localStore;
+    private final MediaReferences mediaReferences;
+    private final ApplicationEventPublisher eventPublisher;
+    // Striped by file name, keeps a release and an acquire of the same file on this node from interleaving
+    private final Object[] locks = new Object[64];
+    // Names the remote store did not have, briefly: the media path is public, unknown names must not each cost a remote read
+    private final Cache<String, Boolean> misses = Caffeine.newBuilder()
+            .expireAfterWrite(MISS_TTL)
+            .maximumSize(MISSES_MAXIMUM_SIZE)
+            .build();
 
     public FileServices(
             @Value("${application.media.upload.max-file-size}") long maxFileSize,
             @Value("${application.media.upload.allowed-content-types}") List<String> allowedContentTypes,
-            @Value("${application.media.upload.base-dir}") String baseUploadDirectory
+            @Value("${application.media.upload.staging-dir}") String stagingDirectory,
+            MediaStores mediaStores,
+            MediaReferences mediaReferences,
+            ApplicationEventPublisher eventPublisher
     ) {
         this.maxFileSize = maxFileSize;
         this.allowedContentTypes = allowedContentTypes;
-        this.baseUploadDirectory = baseUploadDirectory;
+        this.stagingDirectory = stagingDirectory;
+        this.mediaStore = mediaStores.primary();
+        this.localStore = mediaStores.local();
+        this.mediaReferences = mediaReferences;
+        this.eventPublisher = eventPublisher;
+        for (int i = 0; i < locks.length; i++) locks[i] = new Object();
     }
 
     public Response<Object> validateFile(MultipartFile file) {
@@ -55,22 +103,201 @@ public class FileServices {
         return null;
     }
 
+    /*
+     * Stores an upload under the SHA-256 of its content, hashed and probed while it is written to a temporary file.
+     * The same image uploaded twice is stored once: the second copy is dropped and only gains a reference.
+     */
     public String saveFile(MultipartFile file) throws IOException {
-        String uploadDir = baseUploadDirectory + "/";
-        Path uploadPath = Paths.get(uploadDir).toAbsolutePath().normalize();
+        Path uploadPath = localStore.directory();
         Files.createDirectories(uploadPath);
 
-        String uniqueFilename = generateUniqueFilename(file);
-        Path targetLocation = uploadPath.resolve(uniqueFilename).normalize();
+        Path temporary = Files.createTempFile(uploadPath, "upload-", ".part");
+        try {
+            MessageDigest digest = sha256();
+            ImageProbe probe;
+            try (InputStream in = file.getInputStream(); OutputStream out = Files.newOutputStream(temporary)) {
+                probe = copyProbed(in, out, digest);
+            }
+            String filename = contentName(digest, probe);
+            storeBlob(temporary, filename);
+            return filename;
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /*
+     * Only what the upload request has to wait for: the multipart temp file is moved (or copied) to the staging directory
+     * and flushed to the device. The staged name is temporary, storeStagedFile gives the file its content name.
+     */
+    public String stageFile(MultipartFile file) throws IOException {
+        Path stagingPath = Paths.get(stagingDirectory).toAbsolutePath().normalize();
+        Files.createDirectories(stagingPath);
 
-        if (!targetLocation.startsWith(uploadPath)) {
+        String uniqueFilename = generateUniqueFilename(file);
+        Path targetLocation = stagingPath.resolve(uniqueFilename).normalize();
+        if (!targetLocation.startsWith(stagingPath)) {
             throw new IOException("Invalid file path detected");
         }
 
-        Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
+        file.transferTo(targetLocation);
+        try (FileChannel channel = FileChannel.open(targetLocation, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
         return uniqueFilename;
     }
 
+    /*
+     * Hashes a staged file and stores it under its content name with one more reference, the copy is skipped
+     * when that content is already stored. The staged file is left in place: the caller releases it once the
+     * owner points to the returned name, so a crash in between can always be retried.
+     */
+    public String storeStagedFile(String stagedName) throws IOException {
+        Path stagingPath = Paths.get(stagingDirectory).toAbsolutePath().normalize();
+        Path staged = stagingPath.resolve(stagedName).normalize();
+        if (!staged.startsWith(stagingPath)) {
+            throw new IOException("Invalid file path detected");
+        }
+        if (!Files.exists(staged)) throw new NoSuchFileException(staged.toString());
+
+        MessageDigest digest = sha256();
+        ImageProbe probe;
+        try (InputStream in = Files.newInputStream(staged)) {
+            probe = copyProbed(in, OutputStream.nullOutputStream(), digest);
+        }
+        String filename = contentName(digest, probe);
+        storeBlob(staged, filename);
+        return filename;
+    }
+
+    /*
+     * Reads a raw upload body once, with no intermediate copy: the bytes go straight to a temporary file next to
+     * the stored ones while they are counted, hashed and probed for their type and dimensions. An oversized or
+     * non-image body is rejected as soon as it shows, not after it has been received in full.
+     * The finished file is renamed to its content name, or dropped when that content is already stored.
+     */
+    public StoredImage storeStream(InputStream body, long declaredLength) throws IOException {
+        if (declaredLength > maxFileSize) {
+            throw new UploadSizeExceededException("File size exceeds limit: " + formatSize(maxFileSize));
+        }
+
+        Path uploadPath = localStore.directory();
+        Files.createDirectories(uploadPath);
+
+        Path temporary = Files.createTempFile(uploadPath, "upload-", ".part");
+        try {
+            MessageDigest digest = sha256();
+            ImageProbe probe = new ImageProbe();
+            byte[] buffer = new byte[STREAM_BUFFER_BYTES];
+            long size = 0;
+
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                int read;
+                while ((read = body.read(buffer)) != -1) {
+                    size += read;
+                    if (size > maxFileSize) {
+                        throw new UploadSizeExceededException("File size exceeds limit: " + formatSize(maxFileSize));
+                    }
+
+                    boolean typeKnown = probe.typeKnown();
+                    probe.update(buffer, 0, read);
+                    if (!typeKnown && probe.typeKnown()) checkContentType(probe.contentType());
+
+                    digest.update(buffer, 0, read);
+                    ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                    while (chunk.hasRemaining()) channel.write(chunk);
+                }
+                channel.force(true);
+            }
+
+            if (size == 0) throw new IllegalArgumentException("Empty file detected");
+            probe.finish();
+            checkContentType(probe.contentType());
+
+            String filename = contentName(digest, EXTENSIONS.get(probe.contentType()));
+            storeBlob(temporary, filename);
+            return new StoredImage(filename, probe.contentType(), size, probe.width(), probe.height());
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private void checkContentType(String contentType) {
+        if (contentType == null || !allowedContentTypes.contains(contentType)) {
+            throw new UnsupportedMediaTypeException("Invalid file type. Allowed: " + allowedContentTypes);
+        }
+    }
+
+    /*
+     * Counts a reference to filename and writes the content to the primary store unless it already has it:
+     * a copy on this node's disk says nothing about the shared store. A remote store gets the content first,
+     * this node's copy is only made once the shared one exists. A temporary file of the upload directory is
+     * renamed into place instead of copied. The reference is counted before the write, so the sweeper leaves
+     * the new file alone, and given back when the write fails.
+     */
+    private void storeBlob(Path source, String filename) throws IOException {
+        synchronized (lockFor(filename)) {
+            mediaReferences.acquire(filename);
+            try {
+                if (!mediaStore.exists(filename)) mediaStore.put(filename, source);
+                if (mediaStore != localStore && !localStore.exists(filename)) localStore.put(filename, source);
+                misses.invalidate(filename);
+            } catch (IOException | RuntimeException e) {
+                mediaReferences.release(filename);
+                throw e;
+            }
+        }
+    }
+
+    // Moves a file of the flat layout into its shard. Returns false for files that are not stored images
+    public boolean migrateToShard(Path legacy) throws IOException {
+        String filename = legacy.getFileName().toString();
+        if (filename.endsWith(".part") || !Files.isRegularFile(legacy)) return false;
+
+        synchronized (lockFor(filename)) {
+            localStore.migrateToShard(legacy);
+        }
+        return true;
+    }
+
+    private Object lockFor(String filename) {
+        return locks[Math.floorMod(filename.hashCode(), locks.length)];
+    }
+
+    /*
+     * Copies an upload while it is hashed and probed. The extension of the content name comes from the bytes,
+     * not from the client's file name: the same image sent as .jpeg, .jpg or without an extension is stored once.
+     */
+    private static ImageProbe copyProbed(InputStream in, OutputStream out, MessageDigest digest) throws IOException {
+        ImageProbe probe = new ImageProbe();
+        byte[] buffer = new byte[STREAM_BUFFER_BYTES];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            if (!probe.done()) probe.update(buffer, 0, read);
+            digest.update(buffer, 0, read);
+            out.write(buffer, 0, read);
+        }
+        probe.finish();
+        return probe;
+    }
+
+    private String contentName(MessageDigest digest, ImageProbe probe) {
+        checkContentType(probe.contentType());
+        return contentName(digest, EXTENSIONS.get(probe.contentType()));
+    }
+
+    private static String contentName(MessageDigest digest, String extension) {
+        return HexFormat.of().formatHex(digest.digest()) + extension;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     private String generateUniqueFilename(MultipartFile file) {
         String sanitizedName = sanitizeFilename(file.getOriginalFilename());
         String extension = getImageExtension(sanitizedName);
@@ -101,38 +328,131 @@ public class FileServices {
                 .orElse("");
     }
 
-    public Response<Object> deleteOldImage(String image) throws IOException {
-        Path filePath = Paths.get(baseUploadDirectory).resolve(image).normalize();
-        if (!filePath.startsWith(Paths.get(baseUploadDirectory))) {
+    /*
+     * Gives up one reference to an image: a staged file is deleted right away,
+     * a stored one only when nothing points to it anymore.
+     */
+    public Response<Object> releaseImage(String image) throws IOException {
+        if (!localStore.isValid(image)) {
             return buildErrorResponse("Invalid file path");
         }
-        Files.deleteIfExists(filePath);
+
+        Path stagedPath = Paths.get(stagingDirectory).resolve(image).normalize();
+        if (stagedPath.startsWith(Paths.get(stagingDirectory)) && Files.deleteIfExists(stagedPath)) {
+            eventPublisher.publishEvent(new MediaDeletedEvent(image));
+            return null;
+        }
+
+        synchronized (lockFor(image)) {
+            // Files stored before content addressing have no counter and a single owner
+            if (mediaReferences.release(image) <= 0 && (localStore.delete(image) | discardStored(image))) {
+                eventPublisher.publishEvent(new MediaDeletedEvent(image));
+            }
+        }
         return null;
     }
 
-    public Response<Object> getImage(String image) {
-        try {
-            if (image == null || image.isBlank()) {
-                return buildErrorResponse("Invalid image path");
+    // Deletes the shared copy held by a remote store, the local one is handled by the caller
+    public boolean discardStored(String image) throws IOException {
+        return mediaStore != localStore && mediaStore.delete(image);
+    }
+
+    // Directories holding images, by a stable key: the sweeper mirrors them under its quarantine directory
+    public Map<String, Path> mediaDirectories() {
+        return Map.of(
+                "uploads", localStore.directory(),
+                "staging", Paths.get(stagingDirectory).toAbsolutePath().normalize()
+        );
+    }
+
+    /*
+     * Moves a file nothing points to out of the media directories, unless its counter was touched after since.
+     * Checked under the lock storeBlob takes, an upload of the same content cannot revive the file in between.
+     */
+    public boolean quarantine(Path file, Path target, Date since) throws IOException {
+        String filename = file.getFileName().toString();
+        synchronized (lockFor(filename)) {
+            if (!mediaReferences.touchedSince(List.of(filename), since).isEmpty()) return false;
+
+            Files.createDirectories(target.getParent());
+            Files.move(file, target, StandardCopyOption.REPLACE_EXISTING);
+            // The quarantine period starts now, not when the file was written
+            Files.setLastModifiedTime(target, FileTime.from(Instant.now()));
+            mediaReferences.forget(filename);
+        }
+        eventPublisher.publishEvent(new MediaDeletedEvent(filename));
+        return true;
+    }
+
+    // Puts back a quarantined file that is referenced again, or drops it when the content was stored again meanwhile
+    public void restore(Path quarantined, String directoryKey, long owners) throws IOException {
+        String filename = quarantined.getFileName().toString();
+        Path target = "uploads".equals(directoryKey)
+                ? localStore.path(filename)
+                : mediaDirectories().get(directoryKey).resolve(filename);
+        synchronized (lockFor(filename)) {
+            try {
+                Files.createDirectories(target.getParent());
+                Files.move(quarantined, target);
+                mediaReferences.reset(filename, owners);
+            } catch (FileAlreadyExistsException e) {
+                Files.delete(quarantined);
             }
+        }
+    }
 
-            Path filePath = Paths.get(baseUploadDirectory).resolve(image).normalize();
-            if (!filePath.startsWith(Paths.get(baseUploadDirectory))) {
-                return buildErrorResponse("Invalid image path");
+    /*
+     * Readable file of an uploaded image, or null. A cover still being ingested is read from the staging directory meanwhile.
+     * With a remote store, an image this node does not have yet is streamed down to its directory first.
+     */
+    public Path resolveImage(String image) throws IOException {
+        if (image == null || image.isBlank() || !localStore.isValid(image)) return null;
+
+        Path stored = localStore.find(image);
+        if (stored != null) return stored;
+
+        Path stagingPath = Paths.get(stagingDirectory).toAbsolutePath().normalize();
+        Path staged = stagingPath.resolve(image).normalize();
+        if (staged.startsWith(stagingPath) && Files.isRegularFile(staged) && Files.isReadable(staged)) return staged;
+
+        if (mediaStore != localStore) return fetch(image);
+        // Looked at again, the file may have been moved to its shard between the first two lookups
+        return localStore.find(image);
+    }
+
+    /*
+     * The download runs outside the lock: storeBlob, releaseImage and quarantine share its stripes, a slow remote read
+     * must not hold them back. Only the rename into place is done under it. Two requests for the same image may both
+     * download it, the second one finds the first copy and drops its own. A copy put back right after a release of
+     * the image is only an unreferenced file, which the sweeper removes.
+     */
+    private Path fetch(String image) throws IOException {
+        if (misses.getIfPresent(image) != null) return null;
+
+        Path temporary;
+        try (InputStream in = mediaStore.open(image)) {
+            if (in == null) {
+                misses.put(image, Boolean.TRUE);
+                return null;
             }
 
-            Resource resource = new UrlResource(filePath.toUri());
-            if (!resource.exists() || !resource.isReadable()) {
-                return buildErrorResponse("Image not found");
+            Files.createDirectories(localStore.directory());
+            temporary = Files.createTempFile(localStore.directory(), "fetch-", ".part");
+            try {
+                Files.copy(in, temporary, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(temporary);
+                throw e;
             }
+        }
 
-            return Response.<Object>builder()
-                    .message("Success")
-                    .status(HttpStatus.OK.value())
-                    .data(resource)
-                    .build();
-        } catch (Exception e) {
-            return buildErrorResponse("Failed to retrieve the image");
+        try {
+            synchronized (lockFor(image)) {
+                if (localStore.find(image) == null) localStore.put(image, temporary);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
         }
+        return localStore.find(image);
     }
 }
@@ -0,0 +1,79 @@
+package com.booksen.api.helpers;
+
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.gridfs.GridFSBuckets;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import com.mongodb.client.gridfs.model.GridFSUploadOptions;
+import com.mongodb.client.model.Filters;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/*
+ * Images in a GridFS bucket of the application database, shared by every replica of the API.
+ * Contents are split in chunks of the configured size on the way in and read back chunk by chunk.
+ * Two nodes storing the same name at once leave two identical files, delete removes them all.
+ */
+public class GridFsMediaStore implements MediaStore {
+    private final GridFSBucket bucket;
+    private final int chunkSize;
+
+    public GridFsMediaStore(MongoDatabase database, String bucketName, int chunkSize) {
+        this.bucket = GridFSBuckets.create(database, bucketName);
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public String type() {
+        return "gridfs";
+    }
+
+    @Override
+    public boolean exists(String name) {
+        return find(name) != null;
+    }
+
+    @Override
+    public void put(String name, Path source) throws IOException {
+        if (exists(name)) return;
+        try (InputStream in = Files.newInputStream(source)) {
+            bucket.uploadFromStream(name, in, new GridFSUploadOptions().chunkSizeBytes(chunkSize));
+        }
+    }
+
+    @Override
+    public InputStream open(String name) {
+        GridFSFile file = find(name);
+        return file != null ? bucket.openDownloadStream(file.getObjectId()) : null;
+    }
+
+    @Override
+    public boolean delete(String name) {
+        boolean deleted = false;
+        for (GridFSFile file : bucket.find(Filters.eq("filename", name))) {
+            bucket.delete(file.getObjectId());
+            deleted = true;
+        }
+        return deleted;
+    }
+
+    @Override
+    public Stream<String> names() {
+        MongoCursor<GridFSFile> cursor = bucket.find().iterator();
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED), false)
+                .map(GridFSFile::getFilename)
+                .onClose(cursor::close);
+    }
+
+    private GridFSFile find(String name) {
+        return bucket.find(Filters.eq("filename", name)).limit(1).first();
+    }
+}
@@ -11,16 +11,19 @@ import com.booksen.api.user.User;
 import com.booksen.api.user.UserRepository;
 import lombok.AllArgsConstructor;
 import org.springframework.http.HttpStatus;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
 
 @Service
 @AllArgsConstructor
 public class HelperUserService {
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHasher passwordHasher;
     private final FileServices fileServices;
     private final UserRepository userRepository;
     private final JwtService jwtService;
@@ -34,7 +37,7 @@ public class HelperUserService {
         return User.builder()
                 .name(dto.getName().trim().toLowerCase())
                 .email(dto.getEmail().toLowerCase())
-                .password(passwordEncoder.encode(dto.getPassword()))
+                .password(passwordHasher.encode(dto.getPassword()))
                 .role(Role.USER)
                 .avatar(avatar)
                 .build();
@@ -50,6 +53,14 @@ public class HelperUserService {
                 .build();
     }
 
+    // Users carry no modification date, so the validator is a digest of the exposed fields
+    public String toETag(List<UserResponseDTO> users) {
+        String fingerprint = users.stream()
+                .map(u -> String.join("|", u.getId(), u.getName(), u.getEmail(), String.valueOf(u.getRole()), String.valueOf(u.getAvatar())))
+                .collect(Collectors.joining("\n"));
+        return "\"" + DigestUtils.md5DigestAsHex(fingerprint.getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
     public Response<Object> buildAuthResponse(User user, String message, int status) {
         var jwtToken = jwtService.generateToken(user);
 
@@ -90,8 +101,8 @@ public class HelperUserService {
         }
 
         if (dto.getCurrent_password() != null && dto.getNew_password() != null) {
-            if (passwordEncoder.matches(dto.getCurrent_password(), entity.getPassword())) {
-                entity.setPassword(passwordEncoder.encode(dto.getNew_password()));
+            if (passwordHasher.matches(dto.getCurrent_password(), entity.getPassword())) {
+                entity.setPassword(passwordHasher.encode(dto.getNew_password()));
             } else {
                 return Response.badRequest("Previous password does not match");
             }
@@ -105,7 +116,7 @@ public class HelperUserService {
 
             try {
                 if (entity.getAvatar() != null) {
-                    Response<Object> responseDeleted = fileServices.deleteOldImage(entity.getAvatar());
+                    Response<Object> responseDeleted = fileServices.releaseImage(entity.getAvatar());
                     if (responseDeleted != null) return responseDeleted;
                 }
 
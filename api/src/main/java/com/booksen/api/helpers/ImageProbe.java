@@ -0,0 +1,194 @@
+package com.booksen.api.helpers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/*
+ * Learns the type and the dimensions of an image from its bytes as they stream by, without buffering the image.
+ * The type comes from the magic number. PNG, GIF and WebP keep their dimensions in the first 30 bytes,
+ * JPEG ones are in the first SOF segment, reached by skipping the segments before it by their length.
+ */
+final class ImageProbe {
+    private static final int HEADER_BYTES = 30;
+
+    private static final int JPEG_MARKER_PREFIX = 0;
+    private static final int JPEG_MARKER = 1;
+    private static final int JPEG_LENGTH_HIGH = 2;
+    private static final int JPEG_LENGTH_LOW = 3;
+    private static final int JPEG_SKIP = 4;
+    private static final int JPEG_FRAME = 5;
+    private static final int JPEG_DONE = 6;
+
+    private final byte[] header = new byte[HEADER_BYTES];
+    private int headerLength;
+    private String contentType;
+    private Integer width;
+    private Integer height;
+
+    private int jpegState = JPEG_MARKER_PREFIX;
+    private int jpegMarker;
+    private int jpegRemaining;
+    private final byte[] jpegFrame = new byte[5];
+    private int jpegFrameLength;
+
+    // Reads a stored image only as far as its dimensions, the pixels are never decoded
+    static ImageProbe of(Path file) throws IOException {
+        ImageProbe probe = new ImageProbe();
+        byte[] buffer = new byte[8192];
+        try (InputStream input = Files.newInputStream(file)) {
+            int read;
+            while (!probe.done() && (read = input.read(buffer)) != -1) probe.update(buffer, 0, read);
+        }
+        probe.finish();
+        return probe;
+    }
+
+    void update(byte[] buffer, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+
+        while (i < end && headerLength < HEADER_BYTES) {
+            header[headerLength++] = buffer[i++];
+            // JPEG is known after 3 bytes and its markers start right there, the other signatures need 12
+            if (contentType == null && (headerLength == 3 || headerLength == 12)) contentType = sniff();
+            if ("image/jpeg".equals(contentType) && jpegState != JPEG_DONE) jpeg(header[headerLength - 1]);
+        }
+        if (headerLength == HEADER_BYTES && width == null) readHeaderDimensions();
+
+        if ("image/jpeg".equals(contentType)) {
+            while (i < end && jpegState != JPEG_DONE) {
+                if (jpegState == JPEG_SKIP) {
+                    int skipped = Math.min(jpegRemaining, end - i);
+                    jpegRemaining -= skipped;
+                    i += skipped;
+                    if (jpegRemaining == 0) jpegState = JPEG_MARKER_PREFIX;
+                } else {
+                    jpeg(buffer[i++]);
+                }
+            }
+        }
+    }
+
+    // Called at the end of the stream, for images shorter than the header
+    void finish() {
+        if (contentType == null && headerLength >= 3) contentType = sniff();
+        if (width == null) readHeaderDimensions();
+    }
+
+    // Nothing more to learn from the following bytes
+    boolean done() {
+        return width != null || jpegState == JPEG_DONE || (typeKnown() && contentType == null);
+    }
+
+    boolean typeKnown() {
+        return contentType != null || headerLength >= 12;
+    }
+
+    String contentType() {
+        return contentType;
+    }
+
+    Integer width() {
+        return width;
+    }
+
+    Integer height() {
+        return height;
+    }
+
+    private String sniff() {
+        if (headerLength >= 3 && unsigned(0) == 0xFF && unsigned(1) == 0xD8 && unsigned(2) == 0xFF) return "image/jpeg";
+        if (headerLength >= 8 && unsigned(0) == 0x89 && header[1] == 'P' && header[2] == 'N' && header[3] == 'G') return "image/png";
+        if (headerLength >= 6 && header[0] == 'G' && header[1] == 'I' && header[2] == 'F' && header[3] == '8') return "image/gif";
+        if (headerLength >= 12 && header[0] == 'R' && header[1] == 'I' && header[2] == 'F' && header[3] == 'F'
+                && header[8] == 'W' && header[9] == 'E' && header[10] == 'B' && header[11] == 'P') return "image/webp";
+        return null;
+    }
+
+    private void readHeaderDimensions() {
+        if ("image/png".equals(contentType) && headerLength >= 24) {
+            // IHDR chunk right after the signature: big endian width then height
+            width = int32(16);
+            height = int32(20);
+        } else if ("image/gif".equals(contentType) && headerLength >= 10) {
+            width = unsigned(6) | unsigned(7) << 8;
+            height = unsigned(8) | unsigned(9) << 8;
+        } else if ("image/webp".equals(contentType) && headerLength >= 30) {
+            String chunk = new String(header, 12, 4, StandardCharsets.US_ASCII);
+            switch (chunk) {
+                case "VP8 " -> {
+                    width = (unsigned(26) | unsigned(27) << 8) & 0x3FFF;
+                    height = (unsigned(28) | unsigned(29) << 8) & 0x3FFF;
+                }
+                case "VP8L" -> {
+                    int bits = unsigned(21) | unsigned(22) << 8 | unsigned(23) << 16 | unsigned(24) << 24;
+                    width = (bits & 0x3FFF) + 1;
+                    height = (bits >> 14 & 0x3FFF) + 1;
+                }
+                case "VP8X" -> {
+                    width = (unsigned(24) | unsigned(25) << 8 | unsigned(26) << 16) + 1;
+                    height = (unsigned(27) | unsigned(28) << 8 | unsigned(29) << 16) + 1;
+                }
+                default -> { }
+            }
+        }
+    }
+
+    private void jpeg(byte value) {
+        int b = value & 0xFF;
+        switch (jpegState) {
+            case JPEG_MARKER_PREFIX -> jpegState = b == 0xFF ? JPEG_MARKER : JPEG_DONE;
+            case JPEG_MARKER -> {
+                if (b == 0xFF) return;
+                if (b == 0xD8 || b == 0x01 || (b >= 0xD0 && b <= 0xD7)) {
+                    jpegState = JPEG_MARKER_PREFIX;
+                } else if (b == 0xD9 || b == 0xDA) {
+                    // End of image or start of the scan data: no frame header before it
+                    jpegState = JPEG_DONE;
+                } else {
+                    jpegMarker = b;
+                    jpegState = JPEG_LENGTH_HIGH;
+                }
+            }
+            case JPEG_LENGTH_HIGH -> {
+                jpegRemaining = b << 8;
+                jpegState = JPEG_LENGTH_LOW;
+            }
+            case JPEG_LENGTH_LOW -> {
+                jpegRemaining = (jpegRemaining | b) - 2;
+                boolean frame = jpegMarker >= 0xC0 && jpegMarker <= 0xCF
+                        && jpegMarker != 0xC4 && jpegMarker != 0xC8 && jpegMarker != 0xCC;
+                if (frame) {
+                    jpegFrameLength = 0;
+                    jpegState = JPEG_FRAME;
+                } else {
+                    jpegState = jpegRemaining > 0 ? JPEG_SKIP : JPEG_MARKER_PREFIX;
+                }
+            }
+            case JPEG_SKIP -> {
+                if (--jpegRemaining == 0) jpegState = JPEG_MARKER_PREFIX;
+            }
+            case JPEG_FRAME -> {
+                jpegFrame[jpegFrameLength++] = value;
+                if (jpegFrameLength == jpegFrame.length) {
+                    // precision, then big endian height and width
+                    height = (jpegFrame[1] & 0xFF) << 8 | jpegFrame[2] & 0xFF;
+                    width = (jpegFrame[3] & 0xFF) << 8 | jpegFrame[4] & 0xFF;
+                    jpegState = JPEG_DONE;
+                }
+            }
+            default -> { }
+        }
+    }
+
+    private int unsigned(int index) {
+        return header[index] & 0xFF;
+    }
+
+    private int int32(int index) {
+        return unsigned(index) << 24 | unsigned(index + 1) << 16 | unsigned(index + 2) << 8 | unsigned(index + 3);
+    }
+}
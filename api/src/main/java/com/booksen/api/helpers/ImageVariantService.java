@@ -0,0 +1,311 @@
+package com.booksen.api.helpers;
+
+import com.booksen.api.model.TooManyRequestsException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/*
+ * Resized copies of uploaded images, generated with ImageIO on first request and kept in a derivative directory.
+ * Requested boxes are snapped up to a few widths so a handful of files per image covers every client.
+ * The directory is bounded in bytes, the least recently served variants are deleted first.
+ * Whether to decode at all is decided from the probed header: originals that already fit, that ImageIO cannot read
+ * or that have more than max-pixels pixels (a small file can claim a huge canvas) are served as they are.
+ * At most max-concurrent-decodes images are decoded at once, whatever the number of distinct variants requested.
+ */
+@Service
+@Slf4j
+public class ImageVariantService {
+    private static final Set<String> DECODABLE_TYPES = Set.of("image/jpeg", "image/png", "image/gif");
+    private static final Map<String, Integer> NAMED_SIZES = Map.of(
+            "thumb", 80,
+            "small", 160,
+            "medium", 320,
+            "large", 640
+    );
+
+    private final FileServices fileServices;
+    private final Path variantDirectory;
+    private final List<Integer> buckets;
+    private final long maxBytes;
+    private final long maxPixels;
+    private final Semaphore decodes;
+    private final Duration decodeWait;
+
+    // Variant file name -> size, in access order: the eldest entry is the next one evicted
+    private final LinkedHashMap<String, Long> variants = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    // Generations in progress, concurrent requests for the same variant wait for the first one
+    private final Map<String, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+    // Originals whose header looked fine but that ImageIO failed to decode, they are not tried again
+    private final Set<String> undecodable = ConcurrentHashMap.newKeySet();
+
+    public ImageVariantService(
+            FileServices fileServices,
+            @Value("${application.media.variants.dir}") String variantDirectory,
+            @Value("${application.media.variants.widths}") List<Integer> widths,
+            @Value("${application.media.variants.max-bytes}") long maxBytes,
+            @Value("${application.media.variants.max-pixels}") long maxPixels,
+            @Value("${application.media.variants.max-concurrent-decodes}") int maxConcurrentDecodes,
+            @Value("${application.media.variants.decode-wait}") Duration decodeWait
+    ) throws IOException {
+        this.fileServices = fileServices;
+        this.variantDirectory = Paths.get(variantDirectory).toAbsolutePath().normalize();
+        this.buckets = widths.stream().sorted().toList();
+        this.maxBytes = maxBytes;
+        this.maxPixels = maxPixels;
+        this.decodes = new Semaphore(maxConcurrentDecodes);
+        this.decodeWait = decodeWait;
+
+        Files.createDirectories(this.variantDirectory);
+        loadExistingVariants();
+    }
+
+    // File to serve for an uploaded image and optional requested size, null when the image does not exist
+    public Path resolve(String image, Integer width, Integer height, String size) throws IOException {
+        Box box = box(width, height, size);
+        Path original = fileServices.resolveImage(image);
+        if (original == null || box == null) return original;
+        return getVariant(original, box.width(), box.height());
+    }
+
+    // Name of what resolve serves for these parameters, computed without touching the disk
+    public String variantKey(String image, Integer width, Integer height, String size) {
+        Box box = box(width, height, size);
+        return box == null ? image : variantName(image, box.width(), box.height());
+    }
+
+    // Requested size snapped to the configured widths, null when the original is asked for
+    private Box box(Integer width, Integer height, String size) {
+        if (size != null) {
+            Integer named = NAMED_SIZES.get(size.toLowerCase());
+            if (named == null) throw new IllegalArgumentException("Unknown size. Allowed: " + new TreeSet<>(NAMED_SIZES.keySet()));
+            width = named;
+            height = named;
+        }
+        if ((width != null && width < 1) || (height != null && height < 1)) {
+            throw new IllegalArgumentException("Width and height must be positive numbers");
+        }
+        return width == null && height == null ? null : new Box(snap(width), snap(height));
+    }
+
+    private Path getVariant(Path original, Integer width, Integer height) throws IOException {
+        String name = variantName(original.getFileName().toString(), width, height);
+        Path variant = variantDirectory.resolve(name);
+        if (touch(name)) return variant;
+        if (!needsResize(original, width, height)) return original;
+
+        CompletableFuture<Path> generation = new CompletableFuture<>();
+        CompletableFuture<Path> running = inFlight.putIfAbsent(name, generation);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException runtime) throw runtime;
+                throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+            }
+        }
+
+        try {
+            Path generated = generate(original, variant, width, height);
+            generation.complete(generated);
+            return generated;
+        } catch (IOException | RuntimeException e) {
+            generation.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(name, generation);
+        }
+    }
+
+    private boolean needsResize(Path original, Integer width, Integer height) throws IOException {
+        if (undecodable.contains(original.getFileName().toString())) return false;
+
+        ImageProbe probe = ImageProbe.of(original);
+        if (!DECODABLE_TYPES.contains(probe.contentType()) || probe.width() == null || probe.height() == null) return false;
+        if (probe.width() < 1 || probe.height() < 1) return false;
+        if ((long) probe.width() * probe.height() > maxPixels) {
+            log.debug("Not resizing {}: {}x{} is above the decode limit", original.getFileName(), probe.width(), probe.height());
+            return false;
+        }
+        return scale(probe.width(), probe.height(), width, height) < 1.0;
+    }
+
+    private Path generate(Path original, Path variant, Integer width, Integer height) throws IOException {
+        try {
+            if (!decodes.tryAcquire(decodeWait.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new TooManyRequestsException("Too many images are being resized, retry later.", 1);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to resize " + original.getFileName(), e);
+        }
+        try {
+            return resizeInto(original, variant, width, height);
+        } finally {
+            decodes.release();
+        }
+    }
+
+    private Path resizeInto(Path original, Path variant, Integer width, Integer height) throws IOException {
+        BufferedImage source;
+        try {
+            source = ImageIO.read(original.toFile());
+        } catch (IIOException e) {
+            log.warn("Could not decode {}, serving it as it is: {}", original.getFileName(), e.getMessage());
+            source = null;
+        }
+        if (source == null) {
+            undecodable.add(original.getFileName().toString());
+            return original;
+        }
+
+        double scale = scale(source.getWidth(), source.getHeight(), width, height);
+        if (scale >= 1.0) return original;
+
+        int targetWidth = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int targetHeight = Math.max(1, (int) Math.round(source.getHeight() * scale));
+        BufferedImage resized = resize(source, targetWidth, targetHeight, hasAlpha(variant));
+
+        Path temporary = Files.createTempFile(variantDirectory, "variant-", ".part");
+        try {
+            if (!ImageIO.write(resized, formatOf(variant), temporary.toFile())) {
+                throw new IOException("No image writer for " + variant.getFileName());
+            }
+            Files.move(temporary, variant, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+
+        record(variant.getFileName().toString(), Files.size(variant));
+        return variant;
+    }
+
+    private static double scale(int sourceWidth, int sourceHeight, Integer width, Integer height) {
+        return Math.min(
+                width != null ? (double) width / sourceWidth : 1.0,
+                height != null ? (double) height / sourceHeight : 1.0
+        );
+    }
+
+    // Halves the image until it is close to the target, a single bilinear pass over a large ratio drops too many pixels
+    private BufferedImage resize(BufferedImage source, int targetWidth, int targetHeight, boolean alpha) {
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+
+            BufferedImage step = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = step.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                if (!alpha) {
+                    graphics.setColor(Color.WHITE);
+                    graphics.fillRect(0, 0, width, height);
+                }
+                graphics.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = step;
+        } while (width != targetWidth || height != targetHeight);
+
+        return current;
+    }
+
+    private Integer snap(Integer requested) {
+        if (requested == null) return null;
+        for (int bucket : buckets) {
+            if (bucket >= requested) return bucket;
+        }
+        return buckets.get(buckets.size() - 1);
+    }
+
+    // PNG keeps transparency, everything else is served as JPEG
+    private String variantName(String filename, Integer width, Integer height) {
+        int dot = filename.lastIndexOf('.');
+        String base = dot > 0 ? filename.substring(0, dot) : filename;
+        String extension = filename.toLowerCase().endsWith(".png") ? ".png" : ".jpg";
+        return String.format("%s-%sx%s%s", base, width != null ? width : "", height != null ? height : "", extension);
+    }
+
+    private static boolean hasAlpha(Path variant) {
+        return variant.getFileName().toString().endsWith(".png");
+    }
+
+    private static String formatOf(Path variant) {
+        return hasAlpha(variant) ? "png" : "jpg";
+    }
+
+    private synchronized boolean touch(String name) {
+        if (variants.get(name) == null) return false;
+        if (Files.exists(variantDirectory.resolve(name))) return true;
+        totalBytes -= variants.remove(name);
+        return false;
+    }
+
+    private synchronized void record(String name, long bytes) {
+        Long previous = variants.put(name, bytes);
+        totalBytes += bytes - (previous != null ? previous : 0);
+
+        Iterator<Map.Entry<String, Long>> eldest = variants.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            if (entry.getKey().equals(name)) continue;
+            try {
+                Files.deleteIfExists(variantDirectory.resolve(entry.getKey()));
+            } catch (IOException e) {
+                log.warn("Could not evict variant {}: {}", entry.getKey(), e.getMessage());
+                continue;
+            }
+            totalBytes -= entry.getValue();
+            eldest.remove();
+        }
+    }
+
+    // Survives restarts: files already on disk are indexed from the least to the most recently modified
+    private void loadExistingVariants() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(variantDirectory)) {
+            files = listing.filter(Files::isRegularFile).toList();
+        }
+
+        List<Path> sorted = new ArrayList<>(files);
+        sorted.sort(Comparator.comparing(path -> path.toFile().lastModified()));
+        for (Path file : sorted) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(".part")) {
+                Files.deleteIfExists(file);
+            } else {
+                record(name, Files.size(file));
+            }
+        }
+        log.info("Image variant cache: {} files, {} KB", variants.size(), totalBytes / 1024);
+    }
+
+    private record Box(Integer width, Integer height) {}
+}
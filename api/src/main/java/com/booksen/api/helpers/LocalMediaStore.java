@@ -0,0 +1,143 @@
+package com.booksen.api.helpers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/*
+ * Images in a directory of this node. Files fan out over two directory levels named after the first four hex
+ * characters of their name (ab/cd/abcd...), so no directory grows past 65536 entries. Content names and UUIDs
+ * start with hex, any other name is placed by the hash of the name.
+ * Files written before the sharded layout stay flat in the directory until migrated, and are still found.
+ */
+public class LocalMediaStore implements MediaStore {
+    private static final Pattern SHARD_PREFIX = Pattern.compile("[0-9a-f]{4}");
+
+    private final Path directory;
+
+    public LocalMediaStore(String directory) {
+        this.directory = Paths.get(directory).toAbsolutePath().normalize();
+    }
+
+    public Path directory() {
+        return directory;
+    }
+
+    @Override
+    public String type() {
+        return "local";
+    }
+
+    public Path path(String name) {
+        String prefix = name.length() >= 4 ? name.substring(0, 4).toLowerCase() : "";
+        if (!SHARD_PREFIX.matcher(prefix).matches()) {
+            prefix = HexFormat.of().formatHex(sha256().digest(name.getBytes(StandardCharsets.UTF_8))).substring(0, 4);
+        }
+        return directory.resolve(prefix.substring(0, 2)).resolve(prefix.substring(2, 4)).resolve(name).normalize();
+    }
+
+    public Path legacyPath(String name) {
+        return directory.resolve(name).normalize();
+    }
+
+    // False for names that would resolve outside of the directory
+    public boolean isValid(String name) {
+        return path(name).startsWith(directory) && legacyPath(name).startsWith(directory) && !legacyPath(name).equals(directory);
+    }
+
+    // The file holding name, in either layout, or null
+    public Path find(String name) {
+        Path sharded = path(name);
+        if (Files.isRegularFile(sharded)) return sharded;
+        Path legacy = legacyPath(name);
+        return Files.isRegularFile(legacy) ? legacy : null;
+    }
+
+    @Override
+    public boolean exists(String name) {
+        return find(name) != null;
+    }
+
+    /*
+     * A temporary file of this directory is renamed into place, anything else is copied through a temporary file.
+     * Either way the file appears at once and complete: readers never see a partial file.
+     */
+    @Override
+    public void put(String name, Path source) throws IOException {
+        Path target = path(name);
+        Files.createDirectories(target.getParent());
+
+        if (directory.equals(source.toAbsolutePath().normalize().getParent())) {
+            try {
+                Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // Written by another node in the meantime, same name means same bytes
+            }
+            return;
+        }
+
+        Path temporary = Files.createTempFile(directory, "blob-", ".part");
+        try {
+            Files.copy(source, temporary, StandardCopyOption.REPLACE_EXISTING);
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            // Written by another node in the meantime, same name means same bytes
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    @Override
+    public InputStream open(String name) throws IOException {
+        Path file = find(name);
+        return file != null ? Files.newInputStream(file) : null;
+    }
+
+    @Override
+    public boolean delete(String name) throws IOException {
+        return Files.deleteIfExists(path(name)) | Files.deleteIfExists(legacyPath(name));
+    }
+
+    @Override
+    public Stream<String> names() throws IOException {
+        if (!Files.isDirectory(directory)) return Stream.empty();
+        return Files.walk(directory, 3)
+                .filter(Files::isRegularFile)
+                .map(file -> file.getFileName().toString())
+                .filter(name -> !name.endsWith(".part"));
+    }
+
+    // Moves a file of the flat layout into its shard, or drops it if the shard already holds that content
+    public void migrateToShard(Path legacy) throws IOException {
+        Path target = path(legacy.getFileName().toString());
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(legacy, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            Files.deleteIfExists(legacy);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
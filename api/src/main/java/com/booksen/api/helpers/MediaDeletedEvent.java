@@ -0,0 +1,5 @@
+package com.booksen.api.helpers;
+
+// Published once a stored or staged image file is removed from disk
+public record MediaDeletedEvent(String filename) {
+}
@@ -0,0 +1,83 @@
+package com.booksen.api.helpers;
+
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/*
+ * Number of books and users pointing to each stored image, one counter document per file name.
+ * Files named by their content are shared, a file is only deleted when its last reference is released.
+ */
+@Component
+@RequiredArgsConstructor
+public class MediaReferences {
+    private static final String COLLECTION = "media_refs";
+
+    private final MongoTemplate mongoTemplate;
+
+    // Returns the number of references held before this one, 0 for a new file
+    public long acquire(String filename) {
+        Document counter = mongoTemplate.findAndModify(
+                byName(filename),
+                new Update().inc("refs", 1L).set("updatedAt", new Date()),
+                FindAndModifyOptions.options().upsert(true).returnNew(true),
+                Document.class,
+                COLLECTION
+        );
+        return counter != null ? counter.get("refs", Number.class).longValue() - 1 : 0L;
+    }
+
+    /*
+     * Returns the references left, or -1 when the file was never counted (stored before content addressing),
+     * in which case its only owner is the caller. The counter is dropped once it reaches zero.
+     */
+    public long release(String filename) {
+        Document counter = mongoTemplate.findAndModify(
+                byName(filename),
+                new Update().inc("refs", -1L).set("updatedAt", new Date()),
+                FindAndModifyOptions.options().returnNew(true),
+                Document.class,
+                COLLECTION
+        );
+        if (counter == null) return -1L;
+
+        long remaining = counter.get("refs", Number.class).longValue();
+        if (remaining <= 0) {
+            mongoTemplate.remove(Query.query(Criteria.where("_id").is(filename).and("refs").lte(0)), COLLECTION);
+        }
+        return Math.max(remaining, 0L);
+    }
+
+    // Names among filenames whose counter was acquired or released after since, their owner may not be saved yet
+    public Set<String> touchedSince(Collection<String> filenames, Date since) {
+        Query query = Query.query(Criteria.where("_id").in(filenames).and("updatedAt").gt(since));
+        query.fields().include("_id");
+        return mongoTemplate.find(query, Document.class, COLLECTION).stream()
+                .map(counter -> counter.getString("_id"))
+                .collect(Collectors.toSet());
+    }
+
+    // Sets the counter to the number of owners found by a scan, for a file the counter had lost track of
+    public void reset(String filename, long refs) {
+        mongoTemplate.upsert(byName(filename), new Update().set("refs", refs).set("updatedAt", new Date()), COLLECTION);
+    }
+
+    // Drops the counter of a file that is no longer stored
+    public void forget(String filename) {
+        mongoTemplate.remove(byName(filename), COLLECTION);
+    }
+
+    private Query byName(String filename) {
+        return Query.query(Criteria.where("_id").is(filename));
+    }
+}
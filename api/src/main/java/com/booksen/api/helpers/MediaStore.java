@@ -0,0 +1,28 @@
+package com.booksen.api.helpers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/*
+ * Where stored images live, by name. Names are content addresses (see FileServices), so a name always
+ * holds the same bytes and put never has to overwrite. Contents go in and out as streams, never whole in memory.
+ */
+public interface MediaStore {
+    String type();
+
+    boolean exists(String name) throws IOException;
+
+    // Stores the content of source under name. A local store may move source instead of copying it
+    void put(String name, Path source) throws IOException;
+
+    // Content of name, or null when the store does not have it
+    InputStream open(String name) throws IOException;
+
+    // Returns false when there was nothing to delete
+    boolean delete(String name) throws IOException;
+
+    // Every stored name, to be closed by the caller
+    Stream<String> names() throws IOException;
+}
@@ -0,0 +1,87 @@
+package com.booksen.api.helpers;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * The configured media stores. The local one is always there: it is the store itself with application.media.store.type
+ * local, and otherwise the copy this node keeps of the images it wrote or served. Remote ones are built on first use,
+ * so a migration can read one backend and write another.
+ */
+@Component
+public class MediaStores implements DisposableBean {
+    private final MongoTemplate mongoTemplate;
+    private final String type;
+    private final String gridFsBucket;
+    private final int gridFsChunkSize;
+    private final String s3Endpoint;
+    private final String s3Region;
+    private final String s3Bucket;
+    private final String s3AccessKey;
+    private final String s3SecretKey;
+    private final boolean s3PathStyle;
+    private final int s3PartSize;
+
+    private final LocalMediaStore local;
+    private final Map<String, MediaStore> remotes = new ConcurrentHashMap<>();
+
+    public MediaStores(
+            MongoTemplate mongoTemplate,
+            @Value("${application.media.upload.base-dir}") String baseUploadDirectory,
+            @Value("${application.media.store.type}") String type,
+            @Value("${application.media.store.gridfs.bucket}") String gridFsBucket,
+            @Value("${application.media.store.gridfs.chunk-size}") int gridFsChunkSize,
+            @Value("${application.media.store.s3.endpoint}") String s3Endpoint,
+            @Value("${application.media.store.s3.region}") String s3Region,
+            @Value("${application.media.store.s3.bucket}") String s3Bucket,
+            @Value("${application.media.store.s3.access-key}") String s3AccessKey,
+            @Value("${application.media.store.s3.secret-key}") String s3SecretKey,
+            @Value("${application.media.store.s3.path-style}") boolean s3PathStyle,
+            @Value("${application.media.store.s3.part-size}") int s3PartSize
+    ) {
+        this.mongoTemplate = mongoTemplate;
+        this.type = type;
+        this.gridFsBucket = gridFsBucket;
+        this.gridFsChunkSize = gridFsChunkSize;
+        this.s3Endpoint = s3Endpoint;
+        this.s3Region = s3Region;
+        this.s3Bucket = s3Bucket;
+        this.s3AccessKey = s3AccessKey;
+        this.s3SecretKey = s3SecretKey;
+        this.s3PathStyle = s3PathStyle;
+        this.s3PartSize = s3PartSize;
+        this.local = new LocalMediaStore(baseUploadDirectory);
+        get(type);
+    }
+
+    public LocalMediaStore local() {
+        return local;
+    }
+
+    public MediaStore primary() {
+        return get(type);
+    }
+
+    public MediaStore get(String type) {
+        return switch (type) {
+            case "local" -> local;
+            case "gridfs" -> remotes.computeIfAbsent(type, key ->
+                    new GridFsMediaStore(mongoTemplate.getDb(), gridFsBucket, gridFsChunkSize));
+            case "s3" -> remotes.computeIfAbsent(type, key ->
+                    new S3MediaStore(s3Endpoint, s3Region, s3Bucket, s3AccessKey, s3SecretKey, s3PathStyle, s3PartSize));
+            default -> throw new IllegalArgumentException("Unknown media store: " + type + ". Allowed: [local, gridfs, s3]");
+        };
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        for (MediaStore store : remotes.values()) {
+            if (store instanceof AutoCloseable closeable) closeable.close();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.booksen.api.helpers;
+
+import com.booksen.api.model.TooManyRequestsException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Runs BCrypt on passwordHashingExecutor instead of the request thread, so a burst of logins or registrations
+ * holds a few hashing threads and a bounded queue rather than every Tomcat thread.
+ * A full queue is rejected right away with a 429 whose Retry-After is the estimated time to drain it.
+ */
+@Component
+@Slf4j
+public class PasswordHasher {
+    private static final Pattern BCRYPT_COST = Pattern.compile("^\\$2[abxy]?\\$(\\d{2})\\$");
+
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolTaskExecutor executor;
+    private final int strength;
+    private final Timer encodeTimer;
+    private final Timer matchTimer;
+    private final Timer waitTimer;
+    private final Counter rejected;
+
+    public PasswordHasher(
+            PasswordEncoder passwordEncoder,
+            @Qualifier("passwordHashingExecutor") ThreadPoolTaskExecutor executor,
+            MeterRegistry meterRegistry,
+            @Value("${application.security.password.bcrypt-strength}") int strength
+    ) {
+        this.passwordEncoder = passwordEncoder;
+        this.executor = executor;
+        this.strength = strength;
+
+        this.encodeTimer = Timer.builder("security.password.hashing")
+                .description("Time spent hashing or checking a password on the hashing pool")
+                .tag("operation", "encode")
+                .register(meterRegistry);
+        this.matchTimer = Timer.builder("security.password.hashing")
+                .description("Time spent hashing or checking a password on the hashing pool")
+                .tag("operation", "matches")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("security.password.hashing.wait")
+                .description("Time a hashing task waited in the queue before a thread picked it up")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("security.password.hashing.rejected")
+                .description("Hashing requests shed with a 429 because the queue was full")
+                .register(meterRegistry);
+        Gauge.builder("security.password.hashing.queue", executor, e -> e.getThreadPoolExecutor().getQueue().size())
+                .description("Hashing tasks waiting for a thread")
+                .register(meterRegistry);
+        Gauge.builder("security.password.hashing.active", executor, ThreadPoolTaskExecutor::getActiveCount)
+                .description("Hashing threads busy")
+                .register(meterRegistry);
+    }
+
+    public String encode(CharSequence rawPassword) {
+        return run(encodeTimer, () -> passwordEncoder.encode(rawPassword));
+    }
+
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        if (encodedPassword == null) return false;
+        return run(matchTimer, () -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+
+    // True when the hash was made with another cost than bcrypt-strength, lowering the cost is applied too
+    public boolean needsRehash(String encodedPassword) {
+        if (encodedPassword == null) return false;
+        Matcher matcher = BCRYPT_COST.matcher(encodedPassword);
+        return matcher.find() && Integer.parseInt(matcher.group(1)) != strength;
+    }
+
+    private <T> T run(Timer timer, Callable<T> hashing) {
+        long submitted = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                waitTimer.record(System.nanoTime() - submitted, TimeUnit.NANOSECONDS);
+                return timer.recordCallable(hashing);
+            });
+        } catch (TaskRejectedException e) {
+            rejected.increment();
+            throw new TooManyRequestsException("Too many authentication requests, retry later.", retryAfterSeconds());
+        }
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing a password", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+
+    // Queued tasks times the mean hashing time, spread over the pool threads
+    private long retryAfterSeconds() {
+        double meanSeconds = Math.max(encodeTimer.mean(TimeUnit.SECONDS), matchTimer.mean(TimeUnit.SECONDS));
+        int queued = executor.getThreadPoolExecutor().getQueue().size();
+        double drain = queued * meanSeconds / Math.max(1, executor.getMaxPoolSize());
+        return Math.max(1, (long) Math.ceil(drain));
+    }
+}
@@ -0,0 +1,133 @@
+package com.booksen.api.helpers;
+
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/*
+ * Images in a bucket of an S3-compatible object store (AWS S3, MinIO, ...), see docker-compose.minio.yml.
+ * Files up to the part size go up in one request streamed from disk, larger ones as a multipart upload
+ * holding one part in memory at a time.
+ */
+public class S3MediaStore implements MediaStore, AutoCloseable {
+    private final S3Client client;
+    private final String bucket;
+    private final int partSize;
+
+    public S3MediaStore(String endpoint, String region, String bucket, String accessKey, String secretKey,
+                        boolean pathStyle, int partSize) {
+        S3ClientBuilder builder = S3Client.builder()
+                .region(Region.of(region))
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey)))
+                // MinIO and most self-hosted stores serve buckets under the path, not as a sub-domain
+                .forcePathStyle(pathStyle);
+        if (endpoint != null && !endpoint.isBlank()) builder.endpointOverride(URI.create(endpoint));
+        this.client = builder.build();
+        this.bucket = bucket;
+        this.partSize = partSize;
+    }
+
+    @Override
+    public String type() {
+        return "s3";
+    }
+
+    @Override
+    public boolean exists(String name) throws IOException {
+        try {
+            client.headObject(request -> request.bucket(bucket).key(name));
+            return true;
+        } catch (NoSuchKeyException e) {
+            return false;
+        } catch (S3Exception e) {
+            if (e.statusCode() == 404) return false;
+            throw new IOException("Could not look up " + name + " in bucket " + bucket, e);
+        }
+    }
+
+    @Override
+    public void put(String name, Path source) throws IOException {
+        if (exists(name)) return;
+        String contentType = Files.probeContentType(source);
+        try {
+            if (Files.size(source) <= partSize) {
+                client.putObject(request -> request.bucket(bucket).key(name).contentType(contentType), RequestBody.fromFile(source));
+            } else {
+                putMultipart(name, source, contentType);
+            }
+        } catch (S3Exception e) {
+            throw new IOException("Could not store " + name + " in bucket " + bucket, e);
+        }
+    }
+
+    private void putMultipart(String name, Path source, String contentType) throws IOException {
+        String uploadId = client.createMultipartUpload(request -> request.bucket(bucket).key(name).contentType(contentType)).uploadId();
+        try (InputStream in = Files.newInputStream(source)) {
+            List<CompletedPart> parts = new ArrayList<>();
+            byte[] part = new byte[partSize];
+            int read;
+            while ((read = in.readNBytes(part, 0, partSize)) > 0) {
+                int number = parts.size() + 1;
+                String eTag = client.uploadPart(request -> request.bucket(bucket).key(name).uploadId(uploadId).partNumber(number),
+                        RequestBody.fromBytes(read == partSize ? part : Arrays.copyOf(part, read))).eTag();
+                parts.add(CompletedPart.builder().partNumber(number).eTag(eTag).build());
+            }
+            client.completeMultipartUpload(request -> request.bucket(bucket).key(name).uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build()));
+        } catch (IOException | RuntimeException e) {
+            client.abortMultipartUpload(request -> request.bucket(bucket).key(name).uploadId(uploadId));
+            throw e;
+        }
+    }
+
+    @Override
+    public InputStream open(String name) throws IOException {
+        try {
+            return client.getObject(request -> request.bucket(bucket).key(name));
+        } catch (NoSuchKeyException e) {
+            return null;
+        } catch (S3Exception e) {
+            throw new IOException("Could not read " + name + " from bucket " + bucket, e);
+        }
+    }
+
+    @Override
+    public boolean delete(String name) throws IOException {
+        // Deleting a missing key succeeds, the answer has to be looked up first
+        if (!exists(name)) return false;
+        try {
+            client.deleteObject(request -> request.bucket(bucket).key(name));
+            return true;
+        } catch (S3Exception e) {
+            throw new IOException("Could not delete " + name + " from bucket " + bucket, e);
+        }
+    }
+
+    @Override
+    public Stream<String> names() {
+        return client.listObjectsV2Paginator(request -> request.bucket(bucket)).contents().stream().map(S3Object::key);
+    }
+
+    @Override
+    public void close() {
+        client.close();
+    }
+}
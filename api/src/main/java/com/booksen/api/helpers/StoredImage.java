@@ -0,0 +1,5 @@
+package com.booksen.api.helpers;
+
+// An image written by FileServices.storeStream: its content name and what was learned while reading it
+public record StoredImage(String filename, String contentType, long size, Integer width, Integer height) {
+}
@@ -0,0 +1,19 @@
+package com.booksen.api.media;
+
+import org.springframework.http.MediaType;
+
+import java.nio.ByteBuffer;
+
+// Bytes of an immutable image in a direct buffer, outside of the heap, with what its response headers need
+public record CachedMedia(String name, ByteBuffer bytes, MediaType contentType, String eTag, long lastModified) {
+    // Rough size of the record and its key on the heap, added to the buffer so tiny images still weigh something
+    private static final int OVERHEAD_BYTES = 256;
+
+    public int weight() {
+        return bytes.capacity() + OVERHEAD_BYTES;
+    }
+
+    public long length() {
+        return bytes.capacity();
+    }
+}
@@ -0,0 +1,98 @@
+package com.booksen.api.media;
+
+import com.booksen.api.config.CacheConfiguration;
+import com.booksen.api.helpers.MediaDeletedEvent;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Most requested images kept in memory, keyed by the name resolve would serve (image or variant).
+ * Only content-addressed files are cached, their bytes never change under the same name.
+ * Buffers are direct: a few hundred megabytes of images do not make the heap, or its collections, any bigger.
+ * An image is only read into memory the second time it is missed: the first miss only remembers its key, so a crawl
+ * of one-off images goes through sendfile and never allocates, or churns, direct buffers.
+ */
+@Component
+public class HotMediaCache {
+    private final Cache<Object, Object> cache;
+    // Keys missed once, bounded by count so a long crawl only costs a fixed number of small strings
+    private final Cache<String, Boolean> seen;
+    private final long maxEntryBytes;
+
+    public HotMediaCache(
+            CacheManager cacheManager,
+            MeterRegistry meterRegistry,
+            @Value("${application.cache.media.max-entry-bytes}") long maxEntryBytes,
+            @Value("${application.cache.media.seen-maximum-size}") long seenMaximumSize
+    ) {
+        this.cache = ((CaffeineCache) cacheManager.getCache(CacheConfiguration.MEDIA_CACHE)).getNativeCache();
+        this.seen = Caffeine.newBuilder().maximumSize(seenMaximumSize).build();
+        this.maxEntryBytes = maxEntryBytes;
+
+        Gauge.builder("media.cache.resident", this::residentBytes)
+                .description("Bytes of images held by the hot media cache")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("media.cache.hit.ratio", () -> cache.stats().hitRate())
+                .description("Share of cacheable media requests answered from memory")
+                .register(meterRegistry);
+    }
+
+    public CachedMedia get(String key) {
+        return (CachedMedia) cache.getIfPresent(key);
+    }
+
+    // Reads the file into a direct buffer and caches it on its second miss,
+    // null when it is seen for the first time or too large to be worth the memory
+    public CachedMedia load(String key, Path file, MediaType contentType, String eTag, long lastModified) throws IOException {
+        long size = Files.size(file);
+        if (size > maxEntryBytes) return null;
+        if (seen.asMap().remove(key) == null) {
+            seen.put(key, Boolean.TRUE);
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) size);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // reads until the buffer is full or the file ends
+            }
+        }
+        buffer.flip();
+
+        CachedMedia media = new CachedMedia(file.getFileName().toString(), buffer.asReadOnlyBuffer(), contentType, eTag, lastModified);
+        cache.put(key, media);
+        return media;
+    }
+
+    // Drops the image and every variant derived from it
+    @EventListener
+    public void onMediaDeleted(MediaDeletedEvent event) {
+        String filename = event.filename();
+        int dot = filename.lastIndexOf('.');
+        String variantPrefix = (dot > 0 ? filename.substring(0, dot) : filename) + "-";
+        cache.asMap().keySet().removeIf(key -> key.equals(filename) || ((String) key).startsWith(variantPrefix));
+        seen.asMap().keySet().removeIf(key -> key.equals(filename) || key.startsWith(variantPrefix));
+    }
+
+    private long residentBytes() {
+        return cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L);
+    }
+}
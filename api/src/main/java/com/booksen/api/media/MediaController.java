@@ -0,0 +1,57 @@
+package com.booksen.api.media;
+
+import com.booksen.api.dto.media.LayoutMigrationDTO;
+import com.booksen.api.dto.media.StoreMigrationDTO;
+import com.booksen.api.model.Response;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.AllArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+
+// Public, cacheable access to every stored image: book covers, user avatars and their resized variants
+@AllArgsConstructor
+@RestController
+@RequestMapping("/api/v1/media")
+public class MediaController {
+    private final MediaService mediaService;
+    private final MediaLayoutMigration mediaLayoutMigration;
+    private final MediaStoreMigration mediaStoreMigration;
+
+    @PostMapping("/admin/layout-migration")
+    public ResponseEntity<Response<LayoutMigrationDTO>> startLayoutMigration() {
+        Response<LayoutMigrationDTO> response = mediaLayoutMigration.start();
+        return ResponseEntity.status(response.getStatus()).body(response);
+    }
+
+    @GetMapping("/admin/layout-migration")
+    public ResponseEntity<Response<LayoutMigrationDTO>> getLayoutMigration() {
+        Response<LayoutMigrationDTO> response = mediaLayoutMigration.getStatus();
+        return ResponseEntity.status(response.getStatus()).body(response);
+    }
+
+    @PostMapping("/admin/store-migration")
+    public ResponseEntity<Response<StoreMigrationDTO>> startStoreMigration(@RequestParam String from, @RequestParam String to) {
+        Response<StoreMigrationDTO> response = mediaStoreMigration.start(from, to);
+        return ResponseEntity.status(response.getStatus()).body(response);
+    }
+
+    @GetMapping("/admin/store-migration")
+    public ResponseEntity<Response<StoreMigrationDTO>> getStoreMigration() {
+        Response<StoreMigrationDTO> response = mediaStoreMigration.getStatus();
+        return ResponseEntity.status(response.getStatus()).body(response);
+    }
+
+    @GetMapping("/{filename}")
+    public void getMedia(
+            @PathVariable String filename,
+            @RequestParam(name = "w", required = false) Integer width,
+            @RequestParam(name = "h", required = false) Integer height,
+            @RequestParam(required = false) String size,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        mediaService.serve(filename, width, height, size, request, response);
+    }
+}
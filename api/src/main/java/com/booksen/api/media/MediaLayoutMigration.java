@@ -0,0 +1,113 @@
+package com.booksen.api.media;
+
+import com.booksen.api.dto.media.LayoutMigrationDTO;
+import com.booksen.api.helpers.FileServices;
+import com.booksen.api.model.Response;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/*
+ * Moves the files of the flat upload layout into their shard while the application keeps serving them:
+ * FileServices reads both layouts, and every file is moved under the same lock as the writes of its name.
+ * Runs on its own thread, one batch at a time with a pause in between to leave disk time to the requests.
+ */
+@Component
+@Slf4j
+public class MediaLayoutMigration {
+    private final FileServices fileServices;
+    private final int batchSize;
+    private final Duration batchPause;
+
+    private LayoutMigrationDTO progress = LayoutMigrationDTO.builder().build();
+
+    public MediaLayoutMigration(
+            FileServices fileServices,
+            @Value("${application.media.layout-migration.batch-size}") int batchSize,
+            @Value("${application.media.layout-migration.batch-pause}") Duration batchPause
+    ) {
+        this.fileServices = fileServices;
+        this.batchSize = batchSize;
+        this.batchPause = batchPause;
+    }
+
+    public synchronized Response<LayoutMigrationDTO> start() {
+        if (progress.isRunning()) {
+            return new Response<>(HttpStatus.CONFLICT.value(), progress, "Layout migration already running");
+        }
+
+        progress = LayoutMigrationDTO.builder().running(true).startedAt(LocalDateTime.now()).build();
+        Thread thread = new Thread(this::migrate, "media-layout-migration");
+        thread.setDaemon(true);
+        thread.start();
+        return new Response<>(HttpStatus.ACCEPTED.value(), progress, "Layout migration started");
+    }
+
+    public synchronized Response<LayoutMigrationDTO> getStatus() {
+        return new Response<>(HttpStatus.OK.value(), progress, "Layout migration status");
+    }
+
+    private void migrate() {
+        Path uploadPath = fileServices.mediaDirectories().get("uploads");
+        String failure = null;
+        try {
+            if (Files.isDirectory(uploadPath)) {
+                List<Path> batch = new ArrayList<>(batchSize);
+                // Only the entries right under the directory, shard directories are skipped by migrateToShard
+                try (Stream<Path> files = Files.list(uploadPath)) {
+                    Iterator<Path> iterator = files.iterator();
+                    while (iterator.hasNext()) {
+                        batch.add(iterator.next());
+                        if (batch.size() == batchSize) {
+                            migrateBatch(batch);
+                            batch.clear();
+                            Thread.sleep(batchPause.toMillis());
+                        }
+                    }
+                }
+                migrateBatch(batch);
+            }
+        } catch (IOException e) {
+            log.error("Layout migration failed: {}", e.getMessage(), e);
+            failure = e.getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = "Interrupted";
+        }
+
+        synchronized (this) {
+            progress.setRunning(false);
+            progress.setFailure(failure);
+            progress.setFinishedAt(LocalDateTime.now());
+            log.info("Layout migration finished: {} files moved, {} failed", progress.getMoved(), progress.getFailed());
+        }
+    }
+
+    private void migrateBatch(List<Path> files) {
+        long moved = 0;
+        long failed = 0;
+        for (Path file : files) {
+            try {
+                if (fileServices.migrateToShard(file)) moved++;
+            } catch (IOException e) {
+                log.warn("Could not move {} to its shard: {}", file, e.getMessage());
+                failed++;
+            }
+        }
+        synchronized (this) {
+            progress.setMoved(progress.getMoved() + moved);
+            progress.setFailed(progress.getFailed() + failed);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.booksen.api.media;
+
+import com.booksen.api.helpers.ImageVariantService;
+import com.booksen.api.model.ResourceNotFoundException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Serves stored images: conditional requests, single byte ranges and the real content type.
+ * Hot content-addressed images come from HotMediaCache. Otherwise, under Tomcat, the body is handed to the connector
+ * through the sendfile request attributes and never copied through the heap; elsewhere it goes through FileChannel.transferTo.
+ */
+@Service
+@Slf4j
+public class MediaService {
+    // <sha256>.<ext> and its variants <sha256>-<w>x<h>.<ext>: the bytes behind such a name never change
+    private static final Pattern CONTENT_ADDRESSED = Pattern.compile("^([0-9a-f]{64}(?:-\\d*x\\d*)?)\\.[a-z0-9]+$");
+    private static final Pattern SINGLE_RANGE = Pattern.compile("^bytes=(\\d*)-(\\d*)$");
+    private static final CacheControl IMMUTABLE = CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable();
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePublic();
+    private static final MediaType IMAGE_WEBP = MediaType.parseMediaType("image/webp");
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final ImageVariantService imageVariantService;
+    private final HotMediaCache hotMediaCache;
+
+    public MediaService(ImageVariantService imageVariantService, HotMediaCache hotMediaCache) {
+        this.imageVariantService = imageVariantService;
+        this.hotMediaCache = hotMediaCache;
+    }
+
+    public void serve(String filename, Integer width, Integer height, String size,
+                      HttpServletRequest request, HttpServletResponse response) throws IOException {
+        // Only content-addressed names go through the hot cache, a lookup for the others would always miss
+        String cacheKey = CONTENT_ADDRESSED.matcher(filename).matches()
+                ? imageVariantService.variantKey(filename, width, height, size)
+                : null;
+        CachedMedia cached = cacheKey != null ? hotMediaCache.get(cacheKey) : null;
+        if (cached != null) {
+            respond(cached.name(), cached.length(), cached.lastModified(), cached.eTag(), true, cached.contentType(),
+                    null, cached.bytes(), request, response);
+            return;
+        }
+
+        Path file = imageVariantService.resolve(filename, width, height, size);
+        if (file == null) throw new ResourceNotFoundException("Image not found");
+
+        String name = file.getFileName().toString();
+        Matcher contentAddressed = CONTENT_ADDRESSED.matcher(name);
+        boolean immutable = contentAddressed.matches();
+        long length = Files.size(file);
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+        String eTag = immutable ? "\"" + contentAddressed.group(1) + "\"" : String.format("\"%x-%x\"", length, lastModified);
+        MediaType contentType = sniff(file);
+
+        ByteBuffer bytes = null;
+        if (immutable && cacheKey != null) {
+            cached = hotMediaCache.load(cacheKey, file, contentType, eTag, lastModified);
+            if (cached != null) bytes = cached.bytes();
+        }
+        respond(name, length, lastModified, eTag, immutable, contentType, file, bytes, request, response);
+    }
+
+    // The body comes from the cached bytes when there are some, from the file otherwise
+    private void respond(String name, long length, long lastModified, String eTag, boolean immutable, MediaType contentType,
+                         Path file, ByteBuffer bytes, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setHeader(HttpHeaders.CACHE_CONTROL, (immutable ? IMMUTABLE : REVALIDATE).getHeaderValue());
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        // Sets the ETag and Last-Modified headers, and answers 304 (or 412) by itself
+        if (new ServletWebRequest(request, response).checkNotModified(eTag, lastModified)) return;
+
+        response.setContentType(contentType.toString());
+        response.setHeader("X-Content-Type-Options", "nosniff");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.inline().filename(name).build().toString());
+
+        long start = 0;
+        long end = length;
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range != null && length > 0 && rangeApplies(request, eTag, lastModified)) {
+            Matcher matcher = SINGLE_RANGE.matcher(range.trim());
+            // Several ranges in one request are legal but unused by browsers and players, they get the whole file
+            if (matcher.matches() && !(matcher.group(1).isEmpty() && matcher.group(2).isEmpty())) {
+                if (matcher.group(1).isEmpty()) {
+                    start = Math.max(0, length - Long.parseLong(matcher.group(2)));
+                } else {
+                    start = Long.parseLong(matcher.group(1));
+                    if (!matcher.group(2).isEmpty()) end = Math.min(length, Long.parseLong(matcher.group(2)) + 1);
+                }
+                if (start >= length || start >= end) {
+                    response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                    return;
+                }
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + length);
+            }
+        }
+
+        response.setContentLengthLong(end - start);
+        if ("HEAD".equals(request.getMethod()) || end == start) return;
+
+        if (bytes != null) {
+            // A view per response: the cached buffer's own position and limit are shared by every request
+            ByteBuffer body = bytes.duplicate();
+            body.position((int) start).limit((int) end);
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            while (body.hasRemaining()) out.write(body);
+        } else {
+            send(file, start, end, request, response);
+        }
+    }
+
+    // If-Range: the range is only honoured when the client still holds the current version
+    private boolean rangeApplies(HttpServletRequest request, String eTag, long lastModified) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) return true;
+        if (ifRange.startsWith("\"")) return ifRange.equals(eTag);
+
+        long since = request.getDateHeader(HttpHeaders.IF_RANGE);
+        return since >= 0 && lastModified / 1000 == since / 1000;
+    }
+
+    private void send(Path file, long start, long end, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end);
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (position < end) position += channel.transferTo(position, end - position, out);
+        }
+    }
+
+    // Magic numbers of the formats accepted at upload, the stored extension or the client's word are not trusted
+    private static MediaType sniff(Path file) {
+        byte[] header = new byte[12];
+        int read;
+        try (InputStream in = Files.newInputStream(file)) {
+            read = in.readNBytes(header, 0, header.length);
+        } catch (IOException e) {
+            log.warn("Could not read the header of {}: {}", file.getFileName(), e.getMessage());
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+
+        if (read >= 3 && (header[0] & 0xFF) == 0xFF && (header[1] & 0xFF) == 0xD8 && (header[2] & 0xFF) == 0xFF) {
+            return MediaType.IMAGE_JPEG;
+        }
+        if (read >= 8 && (header[0] & 0xFF) == 0x89 && header[1] == 'P' && header[2] == 'N' && header[3] == 'G') {
+            return MediaType.IMAGE_PNG;
+        }
+        if (read >= 6 && header[0] == 'G' && header[1] == 'I' && header[2] == 'F' && header[3] == '8') {
+            return MediaType.IMAGE_GIF;
+        }
+        if (read >= 12 && header[0] == 'R' && header[1] == 'I' && header[2] == 'F' && header[3] == 'F'
+                && header[8] == 'W' && header[9] == 'E' && header[10] == 'B' && header[11] == 'P') {
+            return IMAGE_WEBP;
+        }
+        return MediaType.APPLICATION_OCTET_STREAM;
+    }
+}
@@ -0,0 +1,129 @@
+package com.booksen.api.media;
+
+import com.booksen.api.dto.media.StoreMigrationDTO;
+import com.booksen.api.helpers.MediaStore;
+import com.booksen.api.helpers.MediaStores;
+import com.booksen.api.model.Response;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/*
+ * Copies every stored image from one media store to another, e.g. from the local directory to GridFS before
+ * switching application.media.store.type on all replicas. Files are copied, never removed from the source,
+ * and names already in the target are skipped, so a stopped migration is simply started again.
+ * Each file goes through a temporary file of the work directory, streamed in and out.
+ */
+@Component
+@Slf4j
+public class MediaStoreMigration {
+    private final MediaStores mediaStores;
+    private final Path workDirectory;
+    private final int batchSize;
+    private final Duration batchPause;
+
+    private StoreMigrationDTO progress = StoreMigrationDTO.builder().build();
+
+    public MediaStoreMigration(
+            MediaStores mediaStores,
+            @Value("${application.media.upload.staging-dir}") String workDirectory,
+            @Value("${application.media.store.migration.batch-size}") int batchSize,
+            @Value("${application.media.store.migration.batch-pause}") Duration batchPause
+    ) {
+        this.mediaStores = mediaStores;
+        this.workDirectory = Paths.get(workDirectory).toAbsolutePath().normalize();
+        this.batchSize = batchSize;
+        this.batchPause = batchPause;
+    }
+
+    public synchronized Response<StoreMigrationDTO> start(String from, String to) {
+        if (progress.isRunning()) {
+            return new Response<>(HttpStatus.CONFLICT.value(), progress, "Store migration already running");
+        }
+        if (from == null || from.equals(to)) {
+            throw new IllegalArgumentException("Source and target stores must differ");
+        }
+
+        MediaStore source = mediaStores.get(from);
+        MediaStore target = mediaStores.get(to);
+        progress = StoreMigrationDTO.builder().from(from).to(to).running(true).startedAt(LocalDateTime.now()).build();
+        Thread thread = new Thread(() -> migrate(source, target), "media-store-migration");
+        thread.setDaemon(true);
+        thread.start();
+        return new Response<>(HttpStatus.ACCEPTED.value(), progress, "Store migration started");
+    }
+
+    public synchronized Response<StoreMigrationDTO> getStatus() {
+        return new Response<>(HttpStatus.OK.value(), progress, "Store migration status");
+    }
+
+    private void migrate(MediaStore source, MediaStore target) {
+        String failure = null;
+        long handled = 0;
+        try (Stream<String> names = source.names()) {
+            Files.createDirectories(workDirectory);
+            Iterator<String> iterator = names.iterator();
+            while (iterator.hasNext()) {
+                copy(source, target, iterator.next());
+                if (++handled % batchSize == 0) Thread.sleep(batchPause.toMillis());
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Store migration failed: {}", e.getMessage(), e);
+            failure = e.getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = "Interrupted";
+        }
+
+        synchronized (this) {
+            progress.setRunning(false);
+            progress.setFailure(failure);
+            progress.setFinishedAt(LocalDateTime.now());
+            log.info("Store migration from {} to {} finished: {} copied, {} skipped, {} failed",
+                    progress.getFrom(), progress.getTo(), progress.getCopied(), progress.getSkipped(), progress.getFailed());
+        }
+    }
+
+    private void copy(MediaStore source, MediaStore target, String name) {
+        try {
+            if (target.exists(name)) {
+                synchronized (this) {
+                    progress.setSkipped(progress.getSkipped() + 1);
+                }
+                return;
+            }
+
+            Path temporary = Files.createTempFile(workDirectory, "migrate-", ".part");
+            try {
+                try (InputStream in = source.open(name)) {
+                    // Deleted since it was listed
+                    if (in == null) return;
+                    Files.copy(in, temporary, StandardCopyOption.REPLACE_EXISTING);
+                }
+                target.put(name, temporary);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+            synchronized (this) {
+                progress.setCopied(progress.getCopied() + 1);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not copy {} from {} to {}: {}", name, source.type(), target.type(), e.getMessage());
+            synchronized (this) {
+                progress.setFailed(progress.getFailed() + 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.booksen.api.media;
+
+import com.booksen.api.books.Books;
+import com.booksen.api.helpers.FileServices;
+import com.booksen.api.helpers.MediaReferences;
+import com.booksen.api.user.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+ * Reconciles the media directories with what books and users point to. Files left behind by failed or partial writes
+ * are moved to a quarantine directory once older than the grace period, and deleted after the quarantine period
+ * unless something references them again by then, in which case they are put back.
+ * Listings are streamed and checked in batches of $in queries, at a bounded number of files per second.
+ */
+@Component
+@Slf4j
+@ConditionalOnProperty(name = "application.media.sweeper.enabled", havingValue = "true")
+public class OrphanMediaSweeper {
+    private final MongoTemplate mongoTemplate;
+    private final FileServices fileServices;
+    private final MediaReferences mediaReferences;
+    private final Path quarantineDirectory;
+    private final Duration gracePeriod;
+    private final Duration quarantinePeriod;
+    private final int batchSize;
+    private final int filesPerSecond;
+    private final Counter quarantinedFiles;
+    private final Counter restoredFiles;
+    private final Counter reclaimedBytes;
+
+    public OrphanMediaSweeper(
+            MongoTemplate mongoTemplate,
+            FileServices fileServices,
+            MediaReferences mediaReferences,
+            MeterRegistry meterRegistry,
+            @Value("${application.media.sweeper.quarantine-dir}") String quarantineDirectory,
+            @Value("${application.media.sweeper.grace-period}") Duration gracePeriod,
+            @Value("${application.media.sweeper.quarantine-period}") Duration quarantinePeriod,
+            @Value("${application.media.sweeper.batch-size}") int batchSize,
+            @Value("${application.media.sweeper.files-per-second}") int filesPerSecond
+    ) {
+        this.mongoTemplate = mongoTemplate;
+        this.fileServices = fileServices;
+        this.mediaReferences = mediaReferences;
+        this.quarantineDirectory = Paths.get(quarantineDirectory).toAbsolutePath().normalize();
+        this.gracePeriod = gracePeriod;
+        this.quarantinePeriod = quarantinePeriod;
+        this.batchSize = batchSize;
+        this.filesPerSecond = filesPerSecond;
+        this.quarantinedFiles = Counter.builder("media.sweeper.quarantined")
+                .description("Unreferenced media files moved to quarantine")
+                .register(meterRegistry);
+        this.restoredFiles = Counter.builder("media.sweeper.restored")
+                .description("Quarantined media files put back because they were referenced again")
+                .register(meterRegistry);
+        this.reclaimedBytes = Counter.builder("media.sweeper.reclaimed")
+                .description("Disk space freed by deleting quarantined media files")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${application.media.sweeper.interval}", initialDelayString = "${application.media.sweeper.interval}")
+    public void sweep() {
+        Sweep sweep = new Sweep();
+        for (Map.Entry<String, Path> directory : fileServices.mediaDirectories().entrySet()) {
+            try {
+                sweepDirectory(directory.getKey(), directory.getValue(), sweep);
+            } catch (IOException e) {
+                log.error("Error sweeping {}: {}", directory.getValue(), e.getMessage(), e);
+            }
+        }
+        for (String key : fileServices.mediaDirectories().keySet()) {
+            try {
+                purgeQuarantine(key, sweep);
+            } catch (IOException e) {
+                log.error("Error purging the quarantine of {}: {}", key, e.getMessage(), e);
+            }
+        }
+        log.info("Media sweep done in {} ms: {} files scanned, {} quarantined, {} restored, {} deleted, {} KB reclaimed",
+                System.currentTimeMillis() - sweep.started, sweep.scanned, sweep.quarantined, sweep.restored,
+                sweep.deleted, sweep.reclaimed / 1024);
+    }
+
+    private void sweepDirectory(String key, Path directory, Sweep sweep) throws IOException {
+        if (!Files.isDirectory(directory)) return;
+
+        // Anything written after this may belong to a write still in progress
+        Instant cutoff = Instant.now().minus(gracePeriod);
+        List<Path> batch = new ArrayList<>(batchSize);
+        // Stored files are two shard levels deep, files of the flat layout not migrated yet are right under the directory
+        try (Stream<Path> files = Files.walk(directory, 3)) {
+            Iterator<Path> iterator = files.iterator();
+            while (iterator.hasNext()) {
+                Path file = iterator.next();
+                sweep.tick();
+                Instant modified = lastModified(file);
+                if (modified == null || !modified.isBefore(cutoff)) continue;
+
+                batch.add(file);
+                if (batch.size() == batchSize) {
+                    quarantineUnreferenced(key, batch, cutoff, sweep);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) quarantineUnreferenced(key, batch, cutoff, sweep);
+    }
+
+    private void quarantineUnreferenced(String key, List<Path> files, Instant cutoff, Sweep sweep) {
+        Set<String> names = files.stream().map(file -> file.getFileName().toString()).collect(Collectors.toSet());
+        Date since = Date.from(cutoff);
+        Set<String> kept = owners(names).keySet();
+        Set<String> touched = mediaReferences.touchedSince(names, since);
+
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (kept.contains(name) || touched.contains(name)) continue;
+            try {
+                if (fileServices.quarantine(file, quarantineDirectory.resolve(key).resolve(name), since)) {
+                    sweep.quarantined++;
+                    quarantinedFiles.increment();
+                }
+            } catch (IOException e) {
+                log.warn("Could not quarantine {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    private void purgeQuarantine(String key, Sweep sweep) throws IOException {
+        Path quarantine = quarantineDirectory.resolve(key);
+        if (!Files.isDirectory(quarantine)) return;
+
+        Instant expiry = Instant.now().minus(quarantinePeriod);
+        List<Path> batch = new ArrayList<>(batchSize);
+        try (Stream<Path> files = Files.list(quarantine)) {
+            Iterator<Path> iterator = files.iterator();
+            while (iterator.hasNext()) {
+                batch.add(iterator.next());
+                sweep.tick();
+                if (batch.size() == batchSize) {
+                    purge(key, batch, expiry, sweep);
+                    batch.clear();
+                }
+            }
+        }
+        if (!batch.isEmpty()) purge(key, batch, expiry, sweep);
+    }
+
+    private void purge(String key, List<Path> files, Instant expiry, Sweep sweep) {
+        List<String> names = files.stream().map(file -> file.getFileName().toString()).toList();
+        Map<String, Long> owners = owners(names);
+        // Counted again by some node since the quarantine started: its shared copy is about to be used
+        Set<String> touched = mediaReferences.touchedSince(names, Date.from(expiry));
+
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            try {
+                if (owners.containsKey(name)) {
+                    fileServices.restore(file, key, owners.get(name));
+                    sweep.restored++;
+                    restoredFiles.increment();
+                    log.warn("Restored quarantined media {}, it is referenced again", name);
+                    continue;
+                }
+
+                Instant quarantined = lastModified(file);
+                if (quarantined == null || !quarantined.isBefore(expiry)) continue;
+                long size = Files.size(file);
+                if (Files.deleteIfExists(file)) {
+                    sweep.deleted++;
+                    sweep.reclaimed += size;
+                    reclaimedBytes.increment(size);
+                }
+                if ("uploads".equals(key) && !touched.contains(name)) fileServices.discardStored(name);
+            } catch (IOException e) {
+                log.warn("Could not purge quarantined media {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    // Number of books and users pointing to each of the names, names nothing points to are absent
+    private Map<String, Long> owners(Collection<String> names) {
+        Map<String, Long> owners = new HashMap<>();
+        count(owners, names, mongoTemplate.getCollectionName(Books.class), "cover");
+        count(owners, names, mongoTemplate.getCollectionName(User.class), "avatar");
+        return owners;
+    }
+
+    private void count(Map<String, Long> owners, Collection<String> names, String collection, String field) {
+        Query query = Query.query(Criteria.where(field).in(names));
+        query.fields().include(field);
+        for (Document document : mongoTemplate.find(query, Document.class, collection)) {
+            owners.merge(document.getString(field), 1L, Long::sum);
+        }
+    }
+
+    private static Instant lastModified(Path file) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return attributes.isRegularFile() ? attributes.lastModifiedTime().toInstant() : null;
+        } catch (IOException e) {
+            // Removed while listing
+            return null;
+        }
+    }
+
+    // Totals of one run, and the pacing of its file system work
+    private final class Sweep {
+        private final long started = System.currentTimeMillis();
+        private long scanned;
+        private long quarantined;
+        private long restored;
+        private long deleted;
+        private long reclaimed;
+
+        private void tick() {
+            scanned++;
+            if (scanned % batchSize != 0) return;
+
+            long ahead = scanned * 1000 / filesPerSecond - (System.currentTimeMillis() - started);
+            if (ahead <= 0) return;
+            try {
+                Thread.sleep(ahead);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
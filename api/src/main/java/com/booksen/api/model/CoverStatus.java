@@ -0,0 +1,8 @@
+package com.booksen.api.model;
+
+public enum CoverStatus {
+    // Staged on disk by the upload request, not moved into the uploads directory yet
+    PENDING,
+    READY,
+    FAILED
+}
@@ -0,0 +1,10 @@
+package com.booksen.api.model;
+
+public enum ImportJobStatus {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED,
+    // The node running the job stopped before it finished, it can be resumed
+    INTERRUPTED
+}
@@ -0,0 +1,32 @@
+package com.booksen.api.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/*
+ * Position in a listing that has no stable key to seek on (relevance ranked results),
+ * encoded as an opaque url-safe token like PageCursor.
+ */
+public record OffsetCursor(int offset) {
+    private static final String PREFIX = "offset:";
+
+    public String encode() {
+        String raw = PREFIX + offset;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static int decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) return 0;
+
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (!raw.startsWith(PREFIX)) throw new IllegalArgumentException("Invalid cursor");
+
+            int offset = Integer.parseInt(raw.substring(PREFIX.length()));
+            if (offset < 0) throw new IllegalArgumentException("Invalid cursor");
+            return offset;
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.booksen.api.model;
+
+import org.bson.types.ObjectId;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/*
+ * Keyset position of a listing, encoded as an opaque url-safe token.
+ * Pages are ordered by (createdAt, id), so the cursor only has to remember the last pair that was served.
+ */
+public record PageCursor(LocalDateTime createdAt, String id) {
+    private static final String SEPARATOR = "|";
+
+    public String encode() {
+        String raw = createdAt + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static PageCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) return null;
+
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf(SEPARATOR);
+            String id = raw.substring(separator + 1);
+            if (separator < 0 || !ObjectId.isValid(id)) throw new IllegalArgumentException("Invalid cursor");
+
+            return new PageCursor(LocalDateTime.parse(raw.substring(0, separator)), id);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.booksen.api.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -15,10 +16,22 @@ public class Response<T> {
     private T data;
     private String message;
 
+    // Opaque cursor of the next page, only set on paginated listings
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String nextCursor;
+
+    public Response(int status, T data, String message) {
+        this(status, data, message, null);
+    }
+
     public static <T> Response<T> ok(T data, String message) {
         return new Response<>(HttpStatus.OK.value(), data, message);
     }
 
+    public static <T> Response<T> page(T data, String message, String nextCursor) {
+        return new Response<>(HttpStatus.OK.value(), data, message, nextCursor);
+    }
+
     public static <T> Response<T> notFound(String message) {
         return new Response<>(HttpStatus.NOT_FOUND.value(), null, message);
     }
@@ -0,0 +1,11 @@
+package com.booksen.api.model;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.PAYLOAD_TOO_LARGE)
+public class UploadSizeExceededException extends RuntimeException {
+    public UploadSizeExceededException(String message) {
+        super(message);
+    }
+}
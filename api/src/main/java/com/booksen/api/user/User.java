@@ -30,6 +30,8 @@ public class User implements UserDetails {
 
     private Role role;
     private String avatar;
+    // Tokens carry the version they were issued with, raising it (see TokenRevocations) invalidates the older ones
+    private long tokenVersion;
 
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
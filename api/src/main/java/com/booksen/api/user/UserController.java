@@ -6,49 +6,58 @@ import com.booksen.api.dto.user.UpdateUserDTO;
 import com.booksen.api.dto.user.UserResponseDTO;
 import com.booksen.api.model.Response;
 import com.booksen.api.model.Role;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.AllArgsConstructor;
-import org.springframework.core.io.Resource;
-import org.springframework.http.HttpHeaders;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.io.IOException;
 import java.util.List;
 
 @AllArgsConstructor
 @RestController
 @RequestMapping("/api/v1/user")
 public class UserController {
+    // Browsers keep the body but check the ETag on every use
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
+
     private final UserService userService;
 
     @GetMapping("/{id}")
-    public ResponseEntity<Response<UserResponseDTO>> getUserById(@PathVariable String id) {
+    public ResponseEntity<Response<UserResponseDTO>> getUserById(@PathVariable String id, WebRequest request) {
         Response<UserResponseDTO> response = userService.getUserById(id);
-        return ResponseEntity.status(response.getStatus()).body(response);
+        if (response.getStatus() != HttpStatus.OK.value()) {
+            return ResponseEntity.status(response.getStatus()).body(response);
+        }
+
+        String eTag = userService.getETag(List.of(response.getData()));
+        if (request.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).cacheControl(REVALIDATE).build();
+        }
+        return ResponseEntity.status(response.getStatus()).eTag(eTag).cacheControl(REVALIDATE).body(response);
     }
 
     @GetMapping
-    public ResponseEntity<Response<List<UserResponseDTO>>> getAllUsers() {
+    public ResponseEntity<Response<List<UserResponseDTO>>> getAllUsers(WebRequest request) {
         Response<List<UserResponseDTO>> users = userService.getUsers(Role.USER);
-        return ResponseEntity.status(users.getStatus()).body(users);
-    }
 
-    @GetMapping("/avatar/{filename}")
-    public ResponseEntity<Object> getUserAvatar(@PathVariable String filename) {
-        Response<Object> response = userService.getUserAvatar(filename);
-        if (response.getStatus() != HttpStatus.OK.value()) {
-            return ResponseEntity.status(response.getStatus()).body(response);
+        String eTag = userService.getETag(users.getData());
+        if (request.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).cacheControl(REVALIDATE).build();
         }
+        return ResponseEntity.status(users.getStatus()).eTag(eTag).cacheControl(REVALIDATE).body(users);
+    }
 
-        Resource resource = (Resource) response.getData();
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.IMAGE_JPEG);
-        headers.setContentDispositionFormData("inline", resource.getFilename());
-
-        return ResponseEntity.status(response.getStatus()).headers(headers).body(resource);
+    @GetMapping("/avatar/{filename}")
+    public void getUserAvatar(@PathVariable String filename, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        userService.getUserAvatar(filename, request, response);
     }
 
     @PostMapping(value = "/auth/register", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
@@ -75,6 +84,14 @@ public class UserController {
         return ResponseEntity.status(updatedUser.getStatus()).body(updatedUser);
     }
 
+    // Raw image body (not multipart), streamed to storage
+    @PreAuthorize("#id == authentication.principal.id")
+    @PutMapping("/{id}/avatar")
+    public ResponseEntity<Response<Object>> replaceAvatar(@PathVariable String id, HttpServletRequest request) throws IOException {
+        Response<Object> updatedUser = userService.replaceAvatar(id, request.getInputStream(), request.getContentLengthLong());
+        return ResponseEntity.status(updatedUser.getStatus()).body(updatedUser);
+    }
+
     @PreAuthorize("#id == authentication.principal.id || hasRole('ADMIN')")
     @DeleteMapping("/{id}")
     public ResponseEntity<Response<Object>> deleteUser(@PathVariable String id) {
@@ -1,27 +1,39 @@
 package com.booksen.api.user;
 
+import com.booksen.api.config.jwt.TokenRevocations;
 import com.booksen.api.dto.user.CreateUserDTO;
 import com.booksen.api.dto.user.LoginUserDTO;
 import com.booksen.api.dto.user.UpdateUserDTO;
 import com.booksen.api.dto.user.UserResponseDTO;
 import com.booksen.api.helpers.FileServices;
 import com.booksen.api.helpers.HelperUserService;
+import com.booksen.api.helpers.PasswordHasher;
+import com.booksen.api.helpers.StoredImage;
+import com.booksen.api.media.MediaService;
 import com.booksen.api.model.ResourceNotFoundException;
 import com.booksen.api.model.Response;
 import com.booksen.api.model.Role;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.ConstraintViolation;
 import jakarta.validation.Validator;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.access.AccessDeniedException;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -31,10 +43,13 @@ import java.util.stream.Collectors;
 @Slf4j
 public class UserService {
     private final UserRepository userRepository;
-    private final FileServices fileServices;
-    private final AuthenticationManager authenticationManager;
+    private final MongoTemplate mongoTemplate;
+    private final PasswordHasher passwordHasher;
     private final HelperUserService helperUserService;
     private final Validator validator;
+    private final MediaService mediaService;
+    private final FileServices fileServices;
+    private final TokenRevocations tokenRevocations;
 
     public Response<UserResponseDTO> getUserById(String id) {
         log.info("Getting user with the id ({})", id);
@@ -44,6 +59,10 @@ public class UserService {
 
     }
 
+    public String getETag(List<UserResponseDTO> users) {
+        return helperUserService.toETag(users);
+    }
+
     public Response<Object> createUser(CreateUserDTO dto) {
         log.info("Creating user.");
         Response<Object> buildUserResponse = helperUserService.createUserValidation(dto);
@@ -51,35 +70,49 @@ public class UserService {
 
         String avatar = buildUserResponse != null ? (String) buildUserResponse.getData() : null;
 
-        User user = helperUserService.toUserFromCreateUserDTO(dto, avatar);
-        return helperUserService.buildAuthResponse(userRepository.save(user), "user has been created successfully.", HttpStatus.CREATED.value());
+        User user = userRepository.save(helperUserService.toUserFromCreateUserDTO(dto, avatar));
+        return helperUserService.buildAuthResponse(user, "user has been created successfully.", HttpStatus.CREATED.value());
     }
 
-    public Response<Object> getUserAvatar(String filename) {
-        return fileServices.getImage(filename);
+    public void getUserAvatar(String filename, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        mediaService.serve(filename, null, null, null, request, response);
     }
 
+    // Loads the user once and checks the password on the hashing pool, rather than going through the AuthenticationManager
     public Response<Object> authenticate(LoginUserDTO loginRequest) {
         User user = userRepository.findUserByEmail(loginRequest.getEmail())
                 .orElseThrow(() -> new ResourceNotFoundException("User not found"));
 
-        authenticationManager.authenticate(
-                new UsernamePasswordAuthenticationToken(
-                        loginRequest.getEmail(),
-                        loginRequest.getPassword()
-                )
-        );
+        if (!passwordHasher.matches(loginRequest.getPassword(), user.getPassword())) {
+            throw new BadCredentialsException("Bad credentials");
+        }
+        if (passwordHasher.needsRehash(user.getPassword())) rehash(user, loginRequest.getPassword());
 
         return helperUserService.buildAuthResponse(user, "user has been authenticated successfully.", HttpStatus.OK.value());
     }
 
+    // Moves a hash made with another cost to bcrypt-strength, only if the password was not changed in the meantime
+    private void rehash(User user, String rawPassword) {
+        String previous = user.getPassword();
+        String rehashed = passwordHasher.encode(rawPassword);
+        Query query = Query.query(Criteria.where("_id").is(user.getId()).and("password").is(previous));
+        if (mongoTemplate.updateFirst(query, Update.update("password", rehashed), User.class).getModifiedCount() > 0) {
+            user.setPassword(rehashed);
+        }
+    }
+
     public Response<Object> updateUser(String userId, UpdateUserDTO dto) {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new ResourceNotFoundException("User not found"));
 
+        String previousPassword = user.getPassword();
         Response<Object> updateResponse = helperUserService.updateEntity(user, dto);
         if (updateResponse != null) return updateResponse;
 
+        // A new password logs out every session opened with the old one
+        boolean passwordChanged = !Objects.equals(previousPassword, user.getPassword());
+        if (passwordChanged) user.setTokenVersion(user.getTokenVersion() + 1);
+
         Set<ConstraintViolation<User>> violations = validator.validate(user);
         if (!violations.isEmpty()) {
             List<String> errors = violations.stream()
@@ -87,14 +120,35 @@ public class UserService {
                     .collect(Collectors.toList());
             return new Response<>(HttpStatus.BAD_REQUEST.value(), errors, "Validation failed.");
         }
-        return new Response<>(HttpStatus.OK.value(), userRepository.save(user), "user has been updated successfully.");
+        User updatedUser = userRepository.save(user);
+        if (passwordChanged) tokenRevocations.revoke(updatedUser.getId(), updatedUser.getTokenVersion());
+        return new Response<>(HttpStatus.OK.value(), updatedUser, "user has been updated successfully.");
+    }
+
+    // Raw image body streamed to storage, see FileServices.storeStream
+    public Response<Object> replaceAvatar(String userId, InputStream body, long declaredLength) throws IOException {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new ResourceNotFoundException("User not found"));
+
+        StoredImage image = fileServices.storeStream(body, declaredLength);
+        String previous = user.getAvatar();
+        try {
+            user.setAvatar(image.filename());
+            User updatedUser = userRepository.save(user);
+            if (previous != null) fileServices.releaseImage(previous);
+            return new Response<>(HttpStatus.OK.value(), helperUserService.toResponseUserDTO(updatedUser), "avatar has been updated successfully.");
+        } catch (RuntimeException e) {
+            fileServices.releaseImage(image.filename());
+            throw e;
+        }
     }
 
     public Response<Object> deleteUser(String id) {
         User user = userRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("User not found"));
         userRepository.deleteById(id);
-        return new Response<>(HttpStatus.OK.value(), userRepository.save(user), "User deleted successfully");
+        tokenRevocations.revoke(id, Long.MAX_VALUE);
+        return new Response<>(HttpStatus.OK.value(), user, "User deleted successfully");
     }
 
     public Response<List<UserResponseDTO>> getUsers(Role role) {
@@ -0,0 +1,109 @@
+package com.booksen.api.books;
+
+import com.booksen.api.dto.books.BulkDeleteBooksDTO;
+import com.booksen.api.dto.books.BulkResultDTO;
+import com.booksen.api.helpers.BooksHelper;
+import com.booksen.api.helpers.FileServices;
+import jakarta.validation.Validator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BooksBulkServiceDeleteTest {
+    private BooksRepository booksRepository;
+    private FileServices fileServices;
+    private CatalogVersion catalogVersion;
+    private BooksBulkService booksBulkService;
+
+    @BeforeEach
+    void setUp() {
+        booksRepository = mock(BooksRepository.class);
+        fileServices = mock(FileServices.class);
+        catalogVersion = mock(CatalogVersion.class);
+        // Cover releases run inline so the test can verify them
+        ThreadPoolTaskExecutor mediaTaskExecutor = mock(ThreadPoolTaskExecutor.class);
+        doAnswer(call -> {
+            call.<Runnable>getArgument(0).run();
+            return null;
+        }).when(mediaTaskExecutor).execute(any(Runnable.class));
+
+        booksBulkService = new BooksBulkService(booksRepository, new BooksHelper(booksRepository, fileServices), fileServices,
+                mock(Validator.class), catalogVersion, mock(ApplicationEventPublisher.class), mediaTaskExecutor,
+                mock(CoverIngestionService.class), 100, 5000);
+    }
+
+    @Test
+    void releasesOnlyTheCoversOfBooksThisRequestRemoved() throws Exception {
+        when(booksRepository.findCoversByIds(any())).thenReturn(List.of(book("1", "a.png"), book("2", "b.png")));
+        // 2 is removed by a concurrent delete between the lookup and the removal
+        when(booksRepository.removeCover("1", null)).thenReturn(book("1", "a.png"));
+        when(booksRepository.removeCover("2", null)).thenReturn(null);
+
+        BulkResultDTO result = booksBulkService.deleteBatch(byIds("1", "2")).getData();
+
+        assertThat(result.getMatched()).isEqualTo(2);
+        assertThat(result.getModified()).isEqualTo(1);
+        verify(fileServices).releaseImage("a.png");
+        verify(fileServices, never()).releaseImage("b.png");
+    }
+
+    @Test
+    void byAuthorReleasesOnlyTheCoversOfBooksThisRequestRemoved() throws Exception {
+        when(booksRepository.findCoversByAuthor(eq("someone"), anyInt()))
+                .thenReturn(List.of(book("1", "a.png"), book("2", "b.png")))
+                .thenReturn(List.of());
+        when(booksRepository.removeCover("1", "someone")).thenReturn(book("1", "a.png"));
+        when(booksRepository.removeCover("2", "someone")).thenReturn(null);
+
+        BulkResultDTO result = booksBulkService.deleteBatch(byAuthor("someone")).getData();
+
+        assertThat(result.getModified()).isEqualTo(1);
+        verify(fileServices).releaseImage("a.png");
+        verify(fileServices, never()).releaseImage("b.png");
+    }
+
+    @Test
+    void bumpsNothingWhenAnotherRequestRemovedEverything() throws Exception {
+        when(booksRepository.findCoversByIds(any())).thenReturn(List.of(book("1", "a.png")));
+        when(booksRepository.removeCover(anyString(), isNull())).thenReturn(null);
+
+        booksBulkService.deleteBatch(byIds("1"));
+
+        verify(catalogVersion, never()).bump();
+        verify(fileServices, never()).releaseImage(anyString());
+    }
+
+    private static BulkDeleteBooksDTO byIds(String... ids) {
+        BulkDeleteBooksDTO request = new BulkDeleteBooksDTO();
+        request.setIds(List.of(ids));
+        return request;
+    }
+
+    private static BulkDeleteBooksDTO byAuthor(String author) {
+        BulkDeleteBooksDTO request = new BulkDeleteBooksDTO();
+        request.setAuthor(author);
+        return request;
+    }
+
+    private static Books book(String id, String cover) {
+        Books book = new Books();
+        book.setId(id);
+        book.setCover(cover);
+        return book;
+    }
+}
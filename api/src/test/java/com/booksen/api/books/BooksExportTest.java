@@ -0,0 +1,126 @@
+package com.booksen.api.books;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+// The repository is mocked with a generated cursor, so the catalog size is only bounded by the test time
+class BooksExportTest {
+    private static final int SEEDED_BOOKS = 500_000;
+    private static final long MAX_HEAP_GROWTH = 32L * 1024 * 1024;
+
+    private ObjectMapper objectMapper;
+    private BooksRepository booksRepository;
+    private BooksService booksService;
+
+    @BeforeEach
+    void setUp() {
+        BooksServiceFixture fixture = new BooksServiceFixture();
+        objectMapper = fixture.objectMapper;
+        booksRepository = fixture.booksRepository;
+        booksService = fixture.booksService();
+    }
+
+    @Test
+    void writesOneJsonDocumentPerLine() throws Exception {
+        when(booksRepository.streamAll()).thenReturn(IntStream.range(0, 3).mapToObj(BooksExportTest::book));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        booksService.exportAll(output);
+
+        String[] lines = output.toString().split("\n");
+        assertThat(lines).hasSize(3);
+        for (int i = 0; i < lines.length; i++) {
+            JsonNode node = objectMapper.readTree(lines[i]);
+            assertThat(node.get("id").asText()).isEqualTo("id-" + i);
+            assertThat(node.get("author").asText()).isEqualTo("author " + (i % 100));
+        }
+    }
+
+    @Test
+    void flushesTheFirstRecordBeforeReadingTheNextOne() throws Exception {
+        AtomicInteger read = new AtomicInteger();
+        List<Integer> readAtFirstWrite = new ArrayList<>();
+        when(booksRepository.streamAll()).thenReturn(IntStream.range(0, 1000).mapToObj(i -> {
+            read.incrementAndGet();
+            return book(i);
+        }));
+
+        booksService.exportAll(new OutputStream() {
+            @Override
+            public void write(int b) {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                if (readAtFirstWrite.isEmpty()) readAtFirstWrite.add(read.get());
+            }
+        });
+
+        assertThat(readAtFirstWrite).containsExactly(1);
+    }
+
+    @Test
+    void heapStaysFlatWhileStreamingALargeCatalog() throws Exception {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        List<Long> samples = new ArrayList<>();
+        when(booksRepository.streamAll()).thenReturn(IntStream.range(0, SEEDED_BOOKS).mapToObj(i -> {
+            if (i % 100_000 == 0) samples.add(usedHeapAfterGc(memory));
+            return book(i);
+        }));
+
+        CountingOutputStream output = new CountingOutputStream();
+        booksService.exportAll(output);
+        samples.add(usedHeapAfterGc(memory));
+
+        assertThat(output.lines).isEqualTo(SEEDED_BOOKS);
+        long growth = samples.stream().mapToLong(Long::longValue).max().orElseThrow() - samples.get(0);
+        assertThat(growth).as("heap growth over %d books, samples %s", SEEDED_BOOKS, samples).isLessThan(MAX_HEAP_GROWTH);
+    }
+
+    private static long usedHeapAfterGc(MemoryMXBean memory) {
+        System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static Books book(int i) {
+        LocalDateTime createdAt = LocalDateTime.of(2024, 1, 1, 0, 0).plusSeconds(i);
+        return Books.builder()
+                .id("id-" + i)
+                .name("book " + i)
+                .description("description of book " + i + " long enough to weigh something in the heap")
+                .author("author " + (i % 100))
+                .createdAt(createdAt)
+                .updatedAt(createdAt)
+                .build();
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private long lines;
+
+        @Override
+        public void write(int b) {
+            if (b == '\n') lines++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            for (int i = off; i < off + len; i++) if (b[i] == '\n') lines++;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.booksen.api.books;
+
+import com.booksen.api.helpers.BooksHelper;
+import com.booksen.api.model.ImportJobStatus;
+import jakarta.validation.Validator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BooksImportResumeTest {
+    private static final int BATCH_SIZE = 2;
+
+    @TempDir
+    Path directory;
+
+    private final List<String> written = new CopyOnWriteArrayList<>();
+    private BooksRepository booksRepository;
+    private ThreadPoolTaskExecutor jobExecutor;
+    private ThreadPoolTaskExecutor batchExecutor;
+    private ImportJob job;
+    private BooksImportService booksImportService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Path file = Files.write(directory.resolve("books.jsonl"), IntStream.range(0, 6)
+                .mapToObj(i -> "{\"name\":\"book " + i + "\",\"description\":\"d\",\"author\":\"a\"}")
+                .collect(Collectors.toList()));
+        job = ImportJob.builder().id("job").format("jsonl").stagingPath(file.toString())
+                .status(ImportJobStatus.INTERRUPTED).build();
+
+        ImportJobRepository importJobRepository = mock(ImportJobRepository.class);
+        when(importJobRepository.findById("job")).thenReturn(Optional.of(job));
+        when(importJobRepository.save(any(ImportJob.class))).thenAnswer(call -> call.getArgument(0));
+        booksRepository = mock(BooksRepository.class);
+
+        jobExecutor = executor(1);
+        batchExecutor = executor(3);
+        booksImportService = new BooksImportService(importJobRepository, booksRepository,
+                new BooksHelper(booksRepository, null), mock(Validator.class), Jackson2ObjectMapperBuilder.json().build(),
+                mock(CatalogVersion.class), mock(ApplicationEventPublisher.class), jobExecutor, batchExecutor,
+                directory.toString(), BATCH_SIZE, 3, "node");
+    }
+
+    @AfterEach
+    void tearDown() {
+        jobExecutor.shutdown();
+        batchExecutor.shutdown();
+    }
+
+    @Test
+    void resumeSkipsBatchesFinishedAfterAFailedOne() throws Exception {
+        // Rows 2-3 fail, but only once rows 4-5, past them, have been written
+        CountDownLatch laterBatchWritten = new CountDownLatch(1);
+        doAnswer(call -> {
+            List<Books> books = call.getArgument(0);
+            if (books.get(0).getName().equals("book 2")) {
+                laterBatchWritten.await(5, TimeUnit.SECONDS);
+                throw new IllegalStateException("connection reset");
+            }
+            books.forEach(book -> written.add(book.getName()));
+            if (books.get(0).getName().equals("book 4")) laterBatchWritten.countDown();
+            return null;
+        }).when(booksRepository).insertUnordered(anyList());
+
+        runToEnd();
+
+        assertThat(job.getStatus()).isEqualTo(ImportJobStatus.FAILED);
+        assertThat(job.getCommittedOffset()).isEqualTo(2);
+        assertThat(job.getCompletedRanges()).containsExactly(new ImportJob.CompletedRange(4, 6));
+        assertThat(job.getInserted()).isEqualTo(4);
+
+        doAnswer(call -> {
+            call.<List<Books>>getArgument(0).forEach(book -> written.add(book.getName()));
+            return null;
+        }).when(booksRepository).insertUnordered(anyList());
+
+        runToEnd();
+
+        assertThat(job.getStatus()).isEqualTo(ImportJobStatus.COMPLETED);
+        assertThat(written).containsExactlyInAnyOrder("book 0", "book 1", "book 2", "book 3", "book 4", "book 5");
+        assertThat(job.getInserted()).isEqualTo(6);
+        assertThat(job.getRejected()).isZero();
+        assertThat(job.getErrors()).isEmpty();
+        assertThat(job.getCommittedOffset()).isEqualTo(6);
+        assertThat(job.getCompletedRanges()).isEmpty();
+    }
+
+    @Test
+    void newJobsStartWithoutCompletedRanges() {
+        assertThat(new ImportJob().getCompletedRanges()).isEmpty();
+    }
+
+    private void runToEnd() {
+        booksImportService.resume("job");
+        await().atMost(10, TimeUnit.SECONDS).until(() -> job.getFinishedAt() != null
+                && (job.getStatus() == ImportJobStatus.COMPLETED || job.getStatus() == ImportJobStatus.FAILED));
+    }
+
+    private static ThreadPoolTaskExecutor executor(int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.initialize();
+        return executor;
+    }
+}
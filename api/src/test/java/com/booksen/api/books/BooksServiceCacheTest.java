@@ -0,0 +1,128 @@
+package com.booksen.api.books;
+
+import com.booksen.api.dto.books.BookResponseDTO;
+import com.booksen.api.model.Response;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BooksServiceCacheTest {
+    private BooksRepository booksRepository;
+    private BooksService booksService;
+
+    @BeforeEach
+    void setUp() {
+        BooksServiceFixture fixture = new BooksServiceFixture();
+        booksRepository = fixture.booksRepository;
+        booksService = fixture.booksService();
+    }
+
+    @Test
+    void servesRepeatedReadsFromTheCache() {
+        when(booksRepository.findById("1")).thenReturn(Optional.of(book("first")));
+
+        booksService.getById("1");
+        assertThat(booksService.getById("1").getData().getName()).isEqualTo("first");
+        verify(booksRepository, times(1)).findById("1");
+    }
+
+    @Test
+    void doesNotCacheMissingBooks() {
+        when(booksRepository.findById("1")).thenReturn(Optional.empty());
+
+        assertThat(booksService.getById("1").getStatus()).isEqualTo(404);
+        booksService.getById("1");
+        verify(booksRepository, times(2)).findById("1");
+    }
+
+    @Test
+    void evictDuringALoadDropsTheLoadedValue() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(booksRepository.findById("1"))
+                .thenAnswer(call -> {
+                    loading.countDown();
+                    release.await(5, TimeUnit.SECONDS);
+                    return Optional.of(book("stale"));
+                })
+                .thenReturn(Optional.of(book("fresh")));
+
+        CompletableFuture<?> read = CompletableFuture.runAsync(() -> booksService.getById("1"));
+        assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // The update landed while the read was still loading the previous state
+        CompletableFuture<?> evict = CompletableFuture.runAsync(() -> booksService.onBookChanged(BookChangedEvent.saved(book("fresh"))));
+        Thread.sleep(50);
+        release.countDown();
+        read.get(5, TimeUnit.SECONDS);
+        evict.get(5, TimeUnit.SECONDS);
+
+        assertThat(booksService.getById("1").getData().getName()).isEqualTo("fresh");
+    }
+
+    @Test
+    void servesRepeatedFiltersFromTheCacheUntilABookChanges() {
+        when(booksRepository.findByFilters(any(), any(), any(), any(), anyInt())).thenReturn(List.of(book("first")));
+
+        booksService.filter(List.of("author"), null, null, null, null);
+        booksService.filter(List.of(" author", "author"), null, null, null, null);
+        verify(booksRepository, times(1)).findByFilters(any(), any(), any(), any(), anyInt());
+
+        booksService.onBooksChanged(BookBatchChangedEvent.deleted(List.of("2", "3")));
+        booksService.filter(List.of("author"), null, null, null, null);
+        verify(booksRepository, times(2)).findByFilters(any(), any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void callersCannotAlterACachedFilterPage() {
+        when(booksRepository.findByFilters(any(), any(), any(), any(), anyInt())).thenReturn(List.of(book("first")));
+
+        Response<List<BookResponseDTO>> first = booksService.filter(List.of("author"), null, null, null, null);
+        first.setMessage("changed by a caller");
+        first.setNextCursor("changed");
+
+        Response<List<BookResponseDTO>> second = booksService.filter(List.of("author"), null, null, null, null);
+        assertThat(second).isNotSameAs(first);
+        assertThat(second.getMessage()).isEqualTo("Books retrieved successfully");
+        assertThat(second.getNextCursor()).isNull();
+        assertThatThrownBy(() -> second.getData().clear()).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    void filterLoadedBeforeAWriteIsNotServedAfterIt() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(booksRepository.findByFilters(any(), any(), any(), any(), anyInt()))
+                .thenAnswer(call -> {
+                    loading.countDown();
+                    release.await(5, TimeUnit.SECONDS);
+                    return List.of(book("stale"));
+                })
+                .thenReturn(List.of(book("fresh")));
+
+        CompletableFuture<?> read = CompletableFuture.runAsync(() -> booksService.filter(List.of("author"), null, null, null, null));
+        assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+        booksService.onBookChanged(BookChangedEvent.saved(book("fresh")));
+        release.countDown();
+        read.get(5, TimeUnit.SECONDS);
+
+        assertThat(booksService.filter(List.of("author"), null, null, null, null).getData().get(0).getName()).isEqualTo("fresh");
+    }
+
+    private static Books book(String name) {
+        return Books.builder().id("1").name(name).author("author").build();
+    }
+}
@@ -0,0 +1,63 @@
+package com.booksen.api.books;
+
+import com.booksen.api.model.ResourceNotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BooksServiceDeleteTest {
+    private BooksServiceFixture fixture;
+    private BooksService booksService;
+
+    @BeforeEach
+    void setUp() {
+        fixture = new BooksServiceFixture();
+        booksService = fixture.booksService();
+    }
+
+    @Test
+    void releasesTheCoverOfTheRemovedBook() throws Exception {
+        when(fixture.booksRepository.removeById("1")).thenReturn(book("cover.png"));
+
+        assertThat(booksService.delete("1").getStatus()).isEqualTo(200);
+
+        verify(fixture.fileServices).releaseImage("cover.png");
+        verify(fixture.catalogVersion).bump();
+    }
+
+    @Test
+    void concurrentDeletesReleaseTheCoverOnce() throws Exception {
+        // The first call removes the document, the second finds nothing left to remove
+        when(fixture.booksRepository.removeById("1")).thenReturn(book("cover.png")).thenReturn(null);
+
+        booksService.delete("1");
+        assertThatThrownBy(() -> booksService.delete("1")).isInstanceOf(ResourceNotFoundException.class);
+
+        verify(fixture.fileServices, times(1)).releaseImage("cover.png");
+    }
+
+    @Test
+    void releasesNothingForABookWithoutCover() throws Exception {
+        when(fixture.booksRepository.removeById("1")).thenReturn(book(null));
+
+        booksService.delete("1");
+
+        verify(fixture.fileServices, never()).releaseImage(anyString());
+    }
+
+    private static Books book(String cover) {
+        Books book = new Books();
+        book.setId("1");
+        book.setName("name");
+        book.setAuthor("author");
+        book.setCover(cover);
+        return book;
+    }
+}
@@ -0,0 +1,59 @@
+package com.booksen.api.books;
+
+import com.booksen.api.helpers.BooksHelper;
+import com.booksen.api.helpers.FileServices;
+import com.booksen.api.media.MediaService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.validation.Validator;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/*
+ * Builds a BooksService whose collaborators are all named here: mocks, except for real Caffeine caches and a real
+ * BooksHelper over the mocked repository. Tests stub or verify the fields they care about, a new constructor
+ * parameter is wired in this one place.
+ */
+final class BooksServiceFixture {
+    static final int DEFAULT_PAGE_SIZE = 20;
+    static final int MAX_PAGE_SIZE = 100;
+
+    final BooksRepository booksRepository = mock(BooksRepository.class);
+    final FileServices fileServices = mock(FileServices.class);
+    final Validator validator = mock(Validator.class);
+    final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+    final CatalogVersion catalogVersion = mock(CatalogVersion.class);
+    final BooksSuggestIndex booksSuggestIndex = mock(BooksSuggestIndex.class);
+    final CoverIngestionService coverIngestionService = mock(CoverIngestionService.class);
+    final MediaService mediaService = mock(MediaService.class);
+    final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    final CacheManager cacheManager = mock(CacheManager.class);
+
+    BooksServiceFixture() {
+        when(cacheManager.getCache(anyString())).thenAnswer(call -> new CaffeineCache(call.getArgument(0), Caffeine.newBuilder().build()));
+    }
+
+    BooksService booksService() {
+        return new BooksService(
+                booksRepository,
+                new BooksHelper(booksRepository, fileServices),
+                validator,
+                fileServices,
+                objectMapper,
+                cacheManager,
+                eventPublisher,
+                catalogVersion,
+                booksSuggestIndex,
+                coverIngestionService,
+                mediaService,
+                DEFAULT_PAGE_SIZE,
+                MAX_PAGE_SIZE
+        );
+    }
+}
@@ -0,0 +1,139 @@
+package com.booksen.api.books;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PrefixIndexTest {
+
+    @Test
+    void returnsTheBestScoredTermsOfAPrefix() {
+        PrefixIndex index = new PrefixIndex(3);
+        index.put("dune", 10);
+        index.put("dune messiah", 30);
+        index.put("children of dune", 50);
+        index.put("dungeon", 20);
+        index.put("dracula", 40);
+
+        assertThat(index.top("dun", 10)).containsExactly("dune messiah", "dungeon", "dune");
+        assertThat(index.top("d", 10)).containsExactly("dracula", "dune messiah", "dungeon");
+        assertThat(index.top("", 2)).containsExactly("children of dune", "dracula");
+    }
+
+    @Test
+    void matchesAPrefixEndingInsideAnEdgeLabel() {
+        PrefixIndex index = new PrefixIndex(5);
+        index.put("foundation", 1);
+        index.put("foundation and empire", 2);
+
+        assertThat(index.top("foun", 5)).containsExactly("foundation and empire", "foundation");
+        assertThat(index.top("foundation a", 5)).containsExactly("foundation and empire");
+        assertThat(index.top("fountain", 5)).isEmpty();
+        assertThat(index.top("x", 5)).isEmpty();
+    }
+
+    @Test
+    void breaksScoreTiesAlphabetically() {
+        PrefixIndex index = new PrefixIndex(5);
+        index.put("beta", 1);
+        index.put("alpha", 1);
+        index.put("gamma", 1);
+
+        assertThat(index.top("", 5)).containsExactly("alpha", "beta", "gamma");
+    }
+
+    @Test
+    void putAgainUpdatesTheScore() {
+        PrefixIndex index = new PrefixIndex(5);
+        index.put("emma", 1);
+        index.put("persuasion", 2);
+        index.put("emma", 3);
+
+        assertThat(index.top("", 5)).containsExactly("emma", "persuasion");
+        assertThat(index.size()).isEqualTo(2);
+    }
+
+    @Test
+    void removeDropsTheTermAndKeepsItsSiblings() {
+        PrefixIndex index = new PrefixIndex(5);
+        index.put("the hobbit", 3);
+        index.put("the hunger games", 2);
+        index.put("the", 1);
+
+        index.remove("the hobbit");
+        assertThat(index.top("the h", 5)).containsExactly("the hunger games");
+        assertThat(index.top("the ho", 5)).isEmpty();
+
+        index.remove("the");
+        assertThat(index.top("t", 5)).containsExactly("the hunger games");
+
+        index.remove("the hunger games");
+        assertThat(index.top("", 5)).isEmpty();
+        assertThat(index.size()).isZero();
+    }
+
+    @Test
+    void removingAnUnknownTermIsANoOp() {
+        PrefixIndex index = new PrefixIndex(5);
+        index.put("ulysses", 1);
+
+        index.remove("ulysses s");
+        index.remove("u");
+
+        assertThat(index.top("u", 5)).containsExactly("ulysses");
+    }
+
+    @Test
+    void clearEmptiesTheIndex() {
+        PrefixIndex index = new PrefixIndex(5);
+        index.put("a", 1);
+        index.clear();
+
+        assertThat(index.top("", 5)).isEmpty();
+        assertThat(index.estimatedBytes()).isPositive();
+    }
+
+    // Random inserts, updates and removes checked against a brute force scan of every term
+    @Test
+    void agreesWithABruteForceScan() {
+        Random random = new Random(42);
+        PrefixIndex index = new PrefixIndex(4);
+        Map<String, Long> expected = new HashMap<>();
+
+        for (int i = 0; i < 5_000; i++) {
+            String term = randomTerm(random);
+            if (random.nextInt(4) == 0) {
+                index.remove(term);
+                expected.remove(term);
+            } else {
+                long score = random.nextInt(50);
+                index.put(term, score);
+                expected.put(term, score);
+            }
+        }
+
+        for (int i = 0; i < 500; i++) {
+            String prefix = randomTerm(random).substring(0, random.nextInt(3));
+            List<String> bruteForce = expected.keySet().stream()
+                    .filter(term -> term.startsWith(prefix))
+                    .sorted(Comparator.<String>comparingLong(expected::get).reversed().thenComparing(Comparator.naturalOrder()))
+                    .limit(4)
+                    .toList();
+            assertThat(index.top(prefix, 4)).as("prefix '%s'", prefix).isEqualTo(bruteForce);
+        }
+        assertThat(index.size()).isEqualTo(expected.size());
+    }
+
+    private static String randomTerm(Random random) {
+        StringBuilder term = new StringBuilder();
+        int length = 2 + random.nextInt(5);
+        for (int i = 0; i < length; i++) term.append((char) ('a' + random.nextInt(3)));
+        return term.toString();
+    }
+}
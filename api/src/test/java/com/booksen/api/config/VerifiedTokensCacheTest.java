@@ -0,0 +1,66 @@
+package com.booksen.api.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VerifiedTokensCacheTest {
+    private Cache<Object, Object> verifiedTokens;
+
+    @BeforeEach
+    void setUp() {
+        CaffeineCache cache = (CaffeineCache) new CacheConfiguration()
+                .cacheManager(10, Duration.ofMinutes(1), 10, Duration.ofMinutes(1), 1024, 100)
+                .getCache(CacheConfiguration.VERIFIED_TOKENS_CACHE);
+        verifiedTokens = cache.getNativeCache();
+    }
+
+    @Test
+    void keepsATokenUntilItsExpiry() {
+        verifiedTokens.put("token", jwt(Instant.now().plus(Duration.ofMinutes(10))));
+
+        Duration expiresAfter = verifiedTokens.policy().expireVariably().orElseThrow().getExpiresAfter("token").orElseThrow();
+
+        assertThat(expiresAfter).isBetween(Duration.ofMinutes(9), Duration.ofMinutes(10));
+        assertThat(verifiedTokens.getIfPresent("token")).isNotNull();
+    }
+
+    @Test
+    void readsDoNotExtendTheExpiry() {
+        verifiedTokens.put("token", jwt(Instant.now().plus(Duration.ofMinutes(10))));
+        Duration before = verifiedTokens.policy().expireVariably().orElseThrow().getExpiresAfter("token").orElseThrow();
+
+        verifiedTokens.getIfPresent("token");
+
+        Duration after = verifiedTokens.policy().expireVariably().orElseThrow().getExpiresAfter("token").orElseThrow();
+        assertThat(after).isLessThanOrEqualTo(before);
+    }
+
+    @Test
+    void doesNotServeAnExpiredToken() {
+        verifiedTokens.put("token", jwt(Instant.now().minusSeconds(1)));
+
+        assertThat(verifiedTokens.getIfPresent("token")).isNull();
+    }
+
+    @Test
+    void doesNotKeepATokenWithoutExpiry() {
+        verifiedTokens.put("token", jwt(null));
+
+        assertThat(verifiedTokens.getIfPresent("token")).isNull();
+    }
+
+    private static Jwt jwt(Instant expiresAt) {
+        Instant issuedAt = Instant.now().minus(Duration.ofMinutes(1));
+        Jwt.Builder builder = Jwt.withTokenValue("token").header("alg", "RS256").subject("user").issuedAt(issuedAt);
+        if (expiresAt != null) builder.expiresAt(expiresAt);
+        return builder.build();
+    }
+}
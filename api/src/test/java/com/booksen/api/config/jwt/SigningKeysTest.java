@@ -0,0 +1,193 @@
+package com.booksen.api.config.jwt;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SigningKeysTest {
+    private static final String COLLECTION = "jwk_keys";
+
+    private MongoTemplate mongoTemplate;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.indexOps(anyString())).thenReturn(mock(IndexOperations.class));
+    }
+
+    @Test
+    void writesTheFirstKeyWithARandomKid() {
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq(COLLECTION))).thenReturn(List.of());
+
+        signingKeys("RS256").refresh();
+
+        Document written = inserted();
+        assertThat(written.getString("_id")).startsWith("test-").hasSizeGreaterThan("test-".length() + 30);
+        assertThat(written.getString("replaces")).isEqualTo("none");
+    }
+
+    @Test
+    void namesTheKeyItReplaces() throws Exception {
+        Instant created = Instant.now().minus(Duration.ofDays(40));
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq(COLLECTION)))
+                .thenReturn(List.of(stored(rsaKey("old"), created)));
+
+        signingKeys("RS256").refresh();
+
+        assertThat(inserted().getString("replaces")).isEqualTo("old");
+    }
+
+    @Test
+    void usesTheOtherNodesKeyWhenItRotatedFirst() throws Exception {
+        Document winner = stored(rsaKey("winner"), Instant.now());
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq(COLLECTION)))
+                .thenReturn(List.of())
+                .thenReturn(List.of(winner));
+        when(mongoTemplate.insert(any(Document.class), eq(COLLECTION)))
+                .thenThrow(new DuplicateKeyException("replaces: none"));
+
+        SigningKeys signingKeys = signingKeys("RS256");
+        signingKeys.refresh();
+
+        assertThat(signingKeyIds(signingKeys)).containsExactly("winner");
+        verify(mongoTemplate, times(2)).find(any(Query.class), eq(Document.class), eq(COLLECTION));
+    }
+
+    @Test
+    void storesPrivateKeysEncryptedAndReadsThemBack() throws Exception {
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq(COLLECTION))).thenReturn(List.of());
+        signingKeys("RS256", "secret").refresh();
+        Document written = inserted();
+
+        assertThat(written.getBoolean("encrypted")).isTrue();
+        assertThat(written.getString("kdf")).isEqualTo("pbkdf2-sha256");
+        assertThat(written.getString("jwk")).doesNotContain("\"d\"");
+
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq(COLLECTION))).thenReturn(List.of(written));
+        assertThat(signingKeyIds(signingKeys("RS256", "secret"))).containsExactly(written.getString("_id"));
+    }
+
+    @Test
+    void readsKeysWrappedBeforePbkdf2() throws Exception {
+        RSAKey key = rsaKey("legacy");
+        byte[] legacyKey = MessageDigest.getInstance("SHA-256").digest("secret".getBytes(StandardCharsets.UTF_8));
+        byte[] iv = new byte[12];
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(legacyKey, "AES"), new GCMParameterSpec(128, iv));
+        byte[] encrypted = cipher.doFinal(key.toJSONString().getBytes(StandardCharsets.UTF_8));
+        Document document = stored(key, Instant.now())
+                .append("jwk", Base64.getEncoder().encodeToString(iv) + ":" + Base64.getEncoder().encodeToString(encrypted))
+                .append("encrypted", true);
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq(COLLECTION))).thenReturn(List.of(document));
+
+        assertThat(signingKeyIds(signingKeys("RS256", "secret"))).containsExactly("legacy");
+    }
+
+    @Test
+    void followsTheSharedAlgorithmInsteadOfRotatingBack() throws Exception {
+        // A node still configured for RS256 while the rest of the cluster already moved to ES256
+        ECKey current = new ECKeyGenerator(Curve.P_256).keyUse(KeyUse.SIGNATURE).algorithm(JWSAlgorithm.ES256).keyID("ec").generate();
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq(COLLECTION)))
+                .thenReturn(List.of(stored(current, Instant.now().minus(Duration.ofHours(1)))));
+        when(mongoTemplate.findById("algorithm", Document.class, "jwk_settings"))
+                .thenReturn(new Document("_id", "algorithm").append("algorithm", "ES256"));
+
+        signingKeys("RS256").refresh();
+
+        verify(mongoTemplate, never()).insert(any(Document.class), eq(COLLECTION));
+    }
+
+    @Test
+    void rotatesToTheSharedAlgorithm() throws Exception {
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq(COLLECTION)))
+                .thenReturn(List.of(stored(rsaKey("rsa"), Instant.now().minus(Duration.ofHours(1)))));
+        when(mongoTemplate.findById("algorithm", Document.class, "jwk_settings"))
+                .thenReturn(new Document("_id", "algorithm").append("algorithm", "ES256"));
+
+        signingKeys("RS256").refresh();
+
+        assertThat(JWK.parse(inserted().getString("jwk"))).isInstanceOf(ECKey.class);
+    }
+
+    @Test
+    void publishesItsAlgorithmOnlyOverAnOlderOne() {
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq(COLLECTION))).thenReturn(List.of());
+        when(mongoTemplate.upsert(any(Query.class), any(Update.class), eq("jwk_settings")))
+                .thenThrow(new DuplicateKeyException("_id: algorithm"));
+
+        signingKeys("ES256").refresh();
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).upsert(query.capture(), any(Update.class), eq("jwk_settings"));
+        assertThat(query.getValue().getQueryObject().get("since", Document.class)).containsKey("$lt");
+    }
+
+    private SigningKeys signingKeys(String algorithm) {
+        return signingKeys(algorithm, "");
+    }
+
+    private SigningKeys signingKeys(String algorithm, String encryptionSecret) {
+        return new SigningKeys(mongoTemplate, "test", algorithm, Duration.ofDays(30), Duration.ofMinutes(10), 3600, encryptionSecret);
+    }
+
+    private static List<String> signingKeyIds(SigningKeys signingKeys) throws Exception {
+        return signingKeys.signingSource().get(new JWKSelector(new JWKMatcher.Builder().build()), null).stream()
+                .map(JWK::getKeyID)
+                .toList();
+    }
+
+    private Document inserted() {
+        ArgumentCaptor<Document> captor = ArgumentCaptor.forClass(Document.class);
+        verify(mongoTemplate).insert(captor.capture(), eq(COLLECTION));
+        return captor.getValue();
+    }
+
+    private static RSAKey rsaKey(String keyId) throws Exception {
+        return new RSAKeyGenerator(2048).keyUse(KeyUse.SIGNATURE).algorithm(JWSAlgorithm.RS256).keyID(keyId).generate();
+    }
+
+    private static Document stored(JWK key, Instant createdAt) {
+        return new Document("_id", key.getKeyID())
+                .append("jwk", key.toJSONString())
+                .append("encrypted", false)
+                .append("createdAt", Date.from(createdAt))
+                .append("activeFrom", Date.from(createdAt));
+    }
+}
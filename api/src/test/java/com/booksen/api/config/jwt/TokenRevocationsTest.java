@@ -0,0 +1,92 @@
+package com.booksen.api.config.jwt;
+
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TokenRevocationsTest {
+    private final List<Document> stored = new ArrayList<>();
+    private TokenRevocations tokenRevocations;
+
+    @BeforeEach
+    void setUp() {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq("token_revocations"))).thenAnswer(call -> {
+            Document seq = (Document) call.<Query>getArgument(0).getQueryObject().get("seq");
+            long after = ((Number) seq.get("$gt")).longValue();
+            return stored.stream()
+                    .filter(revocation -> revocation.getLong("seq") > after)
+                    .sorted((a, b) -> Long.compare(a.getLong("seq"), b.getLong("seq")))
+                    .toList();
+        });
+        tokenRevocations = new TokenRevocations(mongoTemplate, 3600);
+    }
+
+    @Test
+    void appliesEntriesInSequenceOrder() {
+        store(1, "alice", 2);
+        store(2, "bob", 5);
+
+        tokenRevocations.refresh();
+
+        assertThat(tokenRevocations.isRevoked("alice", 1)).isTrue();
+        assertThat(tokenRevocations.isRevoked("alice", 2)).isFalse();
+        assertThat(tokenRevocations.isRevoked("bob", 4)).isTrue();
+        assertThat(tokenRevocations.isRevoked("carol", 0)).isFalse();
+    }
+
+    @Test
+    void appliesAnEntryInsertedAfterAHigherNumberWasSeen() {
+        store(1, "alice", 2);
+        tokenRevocations.refresh();
+
+        // 2 was taken first but 3 is inserted first: the poll must not move past 2 while it is missing
+        store(3, "bob", 5);
+        tokenRevocations.refresh();
+        store(2, "carol", 7);
+        tokenRevocations.refresh();
+
+        assertThat(tokenRevocations.isRevoked("bob", 4)).isTrue();
+        assertThat(tokenRevocations.isRevoked("carol", 6)).isTrue();
+    }
+
+    @Test
+    void ignoresTheWritersClock() {
+        store(1, "alice", 2);
+        tokenRevocations.refresh();
+
+        // Written by a node whose clock is far behind
+        stored.add(new Document("userId", "bob").append("minimumVersion", 5L).append("seq", 2L)
+                .append("at", new Date(0)));
+        tokenRevocations.refresh();
+
+        assertThat(tokenRevocations.isRevoked("bob", 4)).isTrue();
+    }
+
+    @Test
+    void keepsTheHighestMinimumVersion() {
+        store(1, "alice", 5);
+        store(2, "alice", 3);
+
+        tokenRevocations.refresh();
+
+        assertThat(tokenRevocations.isRevoked("alice", 4)).isTrue();
+    }
+
+    private void store(long seq, String userId, long minimumVersion) {
+        stored.add(new Document("userId", userId).append("minimumVersion", minimumVersion).append("seq", seq)
+                .append("at", new Date()));
+    }
+}
@@ -0,0 +1,174 @@
+package com.booksen.api.helpers;
+
+import com.booksen.api.model.UnsupportedMediaTypeException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FileServicesStoreTest {
+    // The smallest PNG header the probe accepts: signature and IHDR with a 1x1 image
+    private static final byte[] PNG = {
+            (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n',
+            0, 0, 0, 13, 'I', 'H', 'D', 'R', 0, 0, 0, 1, 0, 0, 0, 1, 8, 2, 0, 0, 0, 0
+    };
+
+    @TempDir
+    Path directory;
+
+    private MediaStore remote;
+    private LocalMediaStore local;
+    private MediaReferences mediaReferences;
+    private FileServices fileServices;
+
+    @BeforeEach
+    void setUp() {
+        remote = mock(MediaStore.class);
+        local = new LocalMediaStore(directory.resolve("uploads").toString());
+        mediaReferences = mock(MediaReferences.class);
+        MediaStores mediaStores = mock(MediaStores.class);
+        when(mediaStores.primary()).thenReturn(remote);
+        when(mediaStores.local()).thenReturn(local);
+
+        fileServices = new FileServices(1 << 20, List.of("image/png"), directory.resolve("staging").toString(),
+                mediaStores, mediaReferences, mock(ApplicationEventPublisher.class));
+    }
+
+    @Test
+    void writesToThePrimaryStoreEvenWhenThisNodeHasACopy() throws Exception {
+        String first = store();
+        when(remote.exists(first)).thenReturn(false);
+
+        store();
+
+        verify(remote, times(2)).put(anyString(), any());
+    }
+
+    @Test
+    void skipsTheWriteWhenThePrimaryStoreHasTheContent() throws Exception {
+        when(remote.exists(anyString())).thenReturn(true);
+
+        String filename = store();
+
+        verify(remote, never()).put(anyString(), any());
+        assertThat(local.exists(filename)).isTrue();
+        verify(mediaReferences).acquire(filename);
+    }
+
+    @Test
+    void countsTheReferenceBeforeTheWrite() throws Exception {
+        String filename = store();
+
+        var order = inOrder(mediaReferences, remote);
+        order.verify(mediaReferences).acquire(filename);
+        order.verify(remote).put(anyString(), any());
+    }
+
+    @Test
+    void givesTheReferenceBackWhenTheWriteFails() throws Exception {
+        doThrow(new IOException("store unavailable")).when(remote).put(anyString(), any());
+
+        assertThatThrownBy(this::store).isInstanceOf(IOException.class);
+
+        verify(mediaReferences).acquire(anyString());
+        verify(mediaReferences).release(anyString());
+        try (var names = Files.list(directory.resolve("uploads"))) {
+            assertThat(names.filter(path -> !path.toString().endsWith(".part"))).isEmpty();
+        }
+    }
+
+    @Test
+    void anUploadDoesNotWaitForADownloadOfTheSameName() throws Exception {
+        String filename = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(PNG)) + ".png";
+        CountDownLatch downloading = new CountDownLatch(1);
+        CountDownLatch stored = new CountDownLatch(1);
+        when(remote.open(filename)).thenAnswer(call -> {
+            downloading.countDown();
+            stored.await(5, TimeUnit.SECONDS);
+            return new ByteArrayInputStream(PNG);
+        });
+
+        CompletableFuture<Path> fetched = CompletableFuture.supplyAsync(() -> {
+            try {
+                return fileServices.resolveImage(filename);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        assertThat(downloading.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture.runAsync(() -> {
+            try {
+                store();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }).get(2, TimeUnit.SECONDS);
+        stored.countDown();
+
+        assertThat(fetched.get(5, TimeUnit.SECONDS)).isEqualTo(local.find(filename));
+        assertThat(Files.readAllBytes(local.find(filename))).isEqualTo(PNG);
+    }
+
+    @Test
+    void remembersNamesTheRemoteStoreDoesNotHave() throws Exception {
+        String filename = "0".repeat(64) + ".png";
+
+        assertThat(fileServices.resolveImage(filename)).isNull();
+        assertThat(fileServices.resolveImage(filename)).isNull();
+
+        verify(remote, times(1)).open(filename);
+    }
+
+    @Test
+    void namesAnUploadByItsBytesNotItsFileName() throws Exception {
+        String named = fileServices.saveFile(new MockMultipartFile("avatar", "avatar.jpeg", "image/png", PNG));
+        String unnamed = fileServices.saveFile(new MockMultipartFile("avatar", "avatar", "image/png", PNG));
+
+        assertThat(named).isEqualTo(unnamed).isEqualTo(store()).endsWith(".png");
+    }
+
+    @Test
+    void namesAStagedFileByItsBytes() throws Exception {
+        Path staging = Files.createDirectories(directory.resolve("staging"));
+        Files.write(staging.resolve("cover.jpg"), PNG);
+
+        assertThat(fileServices.storeStagedFile("cover.jpg")).isEqualTo(store()).endsWith(".png");
+    }
+
+    @Test
+    void rejectsAnUploadThatIsNotAnAllowedImage() {
+        MockMultipartFile text = new MockMultipartFile("avatar", "avatar.png", "image/png", "not an image".getBytes());
+
+        assertThatThrownBy(() -> fileServices.saveFile(text)).isInstanceOf(UnsupportedMediaTypeException.class);
+        verify(mediaReferences, never()).acquire(anyString());
+    }
+
+    private String store() throws IOException {
+        return fileServices.storeStream(new ByteArrayInputStream(PNG), PNG.length).filename();
+    }
+}
@@ -0,0 +1,165 @@
+package com.booksen.api.helpers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImageProbeTest {
+    private static final int WIDTH = 301;
+    private static final int HEIGHT = 157;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsJpegDimensionsWhateverTheSplit() throws Exception {
+        assertEverySplit(encode("jpg"), "image/jpeg");
+    }
+
+    @Test
+    void skipsJpegSegmentsSpanningSeveralBuffers() throws Exception {
+        byte[] jpeg = encode("jpg");
+        // An APP1 segment (EXIF) before the frame header, longer than any of the buffers below
+        byte[] app1 = new byte[4 + 5000];
+        app1[0] = (byte) 0xFF;
+        app1[1] = (byte) 0xE1;
+        app1[2] = (byte) (5002 >> 8);
+        app1[3] = (byte) 5002;
+        Arrays.fill(app1, 4, app1.length, (byte) 0xFF);
+        byte[] withExif = concat(Arrays.copyOfRange(jpeg, 0, 2), app1, Arrays.copyOfRange(jpeg, 2, jpeg.length));
+
+        assertEverySplit(withExif, "image/jpeg");
+        for (int chunk : new int[]{1, 7, 512, 4096}) {
+            assertProbed(probeInChunks(withExif, chunk), "image/jpeg");
+        }
+    }
+
+    @Test
+    void readsPngDimensionsWhateverTheSplit() throws Exception {
+        assertEverySplit(encode("png"), "image/png");
+    }
+
+    @Test
+    void readsGifDimensionsWhateverTheSplit() throws Exception {
+        assertEverySplit(encode("gif"), "image/gif");
+    }
+
+    @Test
+    void readsLossyWebpDimensionsWhateverTheSplit() {
+        byte[] payload = new byte[10];
+        payload[3] = (byte) 0x9D;
+        payload[4] = 0x01;
+        payload[5] = 0x2A;
+        payload[6] = (byte) WIDTH;
+        payload[7] = (byte) (WIDTH >> 8);
+        payload[8] = (byte) HEIGHT;
+        payload[9] = (byte) (HEIGHT >> 8);
+
+        assertEverySplit(webp("VP8 ", payload), "image/webp");
+    }
+
+    @Test
+    void readsLosslessWebpDimensionsWhateverTheSplit() {
+        int bits = (WIDTH - 1) | (HEIGHT - 1) << 14;
+        byte[] payload = {0x2F, (byte) bits, (byte) (bits >> 8), (byte) (bits >> 16), (byte) (bits >> 24), 0, 0, 0, 0, 0};
+
+        assertEverySplit(webp("VP8L", payload), "image/webp");
+    }
+
+    @Test
+    void readsExtendedWebpDimensionsWhateverTheSplit() {
+        int w = WIDTH - 1;
+        int h = HEIGHT - 1;
+        byte[] payload = {0x10, 0, 0, 0, (byte) w, (byte) (w >> 8), (byte) (w >> 16), (byte) h, (byte) (h >> 8), (byte) (h >> 16)};
+
+        assertEverySplit(webp("VP8X", payload), "image/webp");
+    }
+
+    @Test
+    void leavesUnknownContentUntyped() {
+        ImageProbe probe = probeInChunks("just some text, not an image at all".getBytes(StandardCharsets.US_ASCII), 5);
+
+        assertThat(probe.typeKnown()).isTrue();
+        assertThat(probe.contentType()).isNull();
+        assertThat(probe.width()).isNull();
+        assertThat(probe.done()).isTrue();
+    }
+
+    @Test
+    void probesAShortTruncatedHeaderAtTheEnd() {
+        byte[] png = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+        ImageProbe probe = probeInChunks(png, 3);
+
+        assertThat(probe.contentType()).isEqualTo("image/png");
+        assertThat(probe.width()).isNull();
+    }
+
+    @Test
+    void probesAFileWithoutReadingAllOfIt() throws Exception {
+        byte[] jpeg = encode("jpg");
+        // Trailing garbage is never reached: the probe stops at the frame header
+        Path file = Files.write(directory.resolve("image.jpg"), concat(jpeg, new byte[1 << 20]));
+
+        assertProbed(ImageProbe.of(file), "image/jpeg");
+    }
+
+    private static void assertEverySplit(byte[] image, String contentType) {
+        for (int split = 0; split <= Math.min(image.length, 600); split++) {
+            ImageProbe probe = new ImageProbe();
+            probe.update(image, 0, split);
+            probe.update(image, split, image.length - split);
+            probe.finish();
+            assertProbed(probe, contentType);
+        }
+        assertProbed(probeInChunks(image, 1), contentType);
+    }
+
+    private static void assertProbed(ImageProbe probe, String contentType) {
+        assertThat(probe.contentType()).isEqualTo(contentType);
+        assertThat(probe.width()).isEqualTo(WIDTH);
+        assertThat(probe.height()).isEqualTo(HEIGHT);
+        assertThat(probe.done()).isTrue();
+    }
+
+    private static ImageProbe probeInChunks(byte[] image, int chunk) {
+        ImageProbe probe = new ImageProbe();
+        for (int offset = 0; offset < image.length; offset += chunk) {
+            probe.update(image, offset, Math.min(chunk, image.length - offset));
+        }
+        probe.finish();
+        return probe;
+    }
+
+    private static byte[] encode(String format) throws Exception {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThat(ImageIO.write(image, format, out)).isTrue();
+        return out.toByteArray();
+    }
+
+    // RIFF container with one chunk, the payload starts at byte 20
+    private static byte[] webp(String chunk, byte[] payload) {
+        byte[] header = new byte[20];
+        System.arraycopy("RIFF".getBytes(StandardCharsets.US_ASCII), 0, header, 0, 4);
+        System.arraycopy("WEBP".getBytes(StandardCharsets.US_ASCII), 0, header, 8, 4);
+        System.arraycopy(chunk.getBytes(StandardCharsets.US_ASCII), 0, header, 12, 4);
+        header[16] = (byte) payload.length;
+        return concat(header, payload, new byte[64]);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) out.writeBytes(part);
+        return out.toByteArray();
+    }
+}
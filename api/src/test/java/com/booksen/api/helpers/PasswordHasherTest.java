@@ -0,0 +1,86 @@
+package com.booksen.api.helpers;
+
+import com.booksen.api.config.AppExceptionsHandler;
+import com.booksen.api.config.AsyncConfiguration;
+import com.booksen.api.model.TooManyRequestsException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PasswordHasherTest {
+    private final CountDownLatch hashing = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private ThreadPoolTaskExecutor executor;
+    private PasswordHasher passwordHasher;
+
+    @BeforeEach
+    void setUp() {
+        PasswordEncoder passwordEncoder = mock(PasswordEncoder.class);
+        when(passwordEncoder.encode(any())).thenAnswer(call -> {
+            hashing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return "hash";
+        });
+
+        // One thread and one queued task
+        executor = new AsyncConfiguration().passwordHashingExecutor(1, 1);
+        executor.initialize();
+        passwordHasher = new PasswordHasher(passwordEncoder, executor, meterRegistry, 10);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    void hashesOnThePool() {
+        release.countDown();
+
+        assertThat(passwordHasher.encode("secret")).isEqualTo("hash");
+    }
+
+    @Test
+    void rejectsWith429WhenTheQueueIsFull() throws Exception {
+        CompletableFuture<String> running = CompletableFuture.supplyAsync(() -> passwordHasher.encode("first"));
+        assertThat(hashing.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> passwordHasher.encode("second"));
+        await().atMost(5, TimeUnit.SECONDS).until(() -> executor.getThreadPoolExecutor().getQueue().size() == 1);
+
+        assertThatThrownBy(() -> passwordHasher.encode("third"))
+                .isInstanceOfSatisfying(TooManyRequestsException.class,
+                        e -> assertThat(e.getRetryAfterSeconds()).isGreaterThanOrEqualTo(1));
+        assertThat(meterRegistry.counter("security.password.hashing.rejected").count()).isEqualTo(1);
+
+        release.countDown();
+        assertThat(running.get(5, TimeUnit.SECONDS)).isEqualTo("hash");
+        assertThat(queued.get(5, TimeUnit.SECONDS)).isEqualTo("hash");
+    }
+
+    @Test
+    void rejectionIsAnswered429WithRetryAfter() {
+        ResponseEntity<?> response = new AppExceptionsHandler()
+                .handleTooManyRequests(new TooManyRequestsException("Too many authentication requests, retry later.", 3));
+
+        assertThat(response.getStatusCode().value()).isEqualTo(429);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("3");
+    }
+}
@@ -0,0 +1,70 @@
+package com.booksen.api.media;
+
+import com.booksen.api.helpers.MediaDeletedEvent;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.http.MediaType;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class HotMediaCacheTest {
+    private static final String KEY = "a".repeat(64) + ".png";
+
+    @TempDir
+    Path directory;
+
+    private HotMediaCache hotMediaCache;
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        CacheManager cacheManager = mock(CacheManager.class);
+        when(cacheManager.getCache(anyString())).thenAnswer(call -> new CaffeineCache(call.getArgument(0), Caffeine.newBuilder().build()));
+        hotMediaCache = new HotMediaCache(cacheManager, new SimpleMeterRegistry(), 1024, 100);
+        file = Files.write(directory.resolve(KEY), new byte[]{1, 2, 3});
+    }
+
+    @Test
+    void admitsAnImageOnlyOnItsSecondMiss() throws Exception {
+        assertThat(load(KEY)).isNull();
+        assertThat(hotMediaCache.get(KEY)).isNull();
+
+        CachedMedia loaded = load(KEY);
+
+        assertThat(loaded).isNotNull();
+        assertThat(loaded.length()).isEqualTo(3);
+        assertThat(hotMediaCache.get(KEY)).isSameAs(loaded);
+    }
+
+    @Test
+    void neverAdmitsImagesAboveTheEntryLimit() throws Exception {
+        Files.write(file, new byte[2048]);
+
+        assertThat(load(KEY)).isNull();
+        assertThat(load(KEY)).isNull();
+        assertThat(hotMediaCache.get(KEY)).isNull();
+    }
+
+    @Test
+    void deletionForgetsImagesSeenOnce() throws Exception {
+        load(KEY);
+        hotMediaCache.onMediaDeleted(new MediaDeletedEvent(KEY));
+
+        assertThat(load(KEY)).isNull();
+    }
+
+    private CachedMedia load(String key) throws Exception {
+        return hotMediaCache.load(key, file, MediaType.IMAGE_PNG, "\"etag\"", 0);
+    }
+}
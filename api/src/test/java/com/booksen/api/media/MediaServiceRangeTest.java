@@ -0,0 +1,221 @@
+package com.booksen.api.media;
+
+import com.booksen.api.helpers.ImageVariantService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MediaServiceRangeTest {
+    private static final String NAME = "cover.png";
+    private static final String HASHED = "a".repeat(64) + ".png";
+    private static final Instant MODIFIED = Instant.parse("2026-01-02T03:04:05Z");
+
+    @TempDir
+    Path directory;
+
+    private final byte[] content = png(100);
+    private ImageVariantService imageVariantService;
+    private HotMediaCache hotMediaCache;
+    private MediaService mediaService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Path file = Files.write(directory.resolve(NAME), content);
+        Files.setLastModifiedTime(file, FileTime.from(MODIFIED));
+
+        imageVariantService = mock(ImageVariantService.class);
+        hotMediaCache = mock(HotMediaCache.class);
+        when(imageVariantService.resolve(NAME, null, null, null)).thenReturn(file);
+        mediaService = new MediaService(imageVariantService, hotMediaCache);
+    }
+
+    @Test
+    void servesTheWholeFileWithoutRange() throws Exception {
+        MockHttpServletResponse response = serve(new MockHttpServletRequest("GET", "/"));
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getHeader(HttpHeaders.ACCEPT_RANGES)).isEqualTo("bytes");
+        assertThat(response.getContentLengthLong()).isEqualTo(content.length);
+        assertThat(response.getContentAsByteArray()).isEqualTo(content);
+    }
+
+    @Test
+    void servesABoundedRange() throws Exception {
+        MockHttpServletResponse response = serve(range("bytes=10-19"));
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 10-19/100");
+        assertThat(response.getContentLengthLong()).isEqualTo(10);
+        assertThat(response.getContentAsByteArray()).isEqualTo(Arrays.copyOfRange(content, 10, 20));
+    }
+
+    @Test
+    void servesAnOpenEndedRange() throws Exception {
+        MockHttpServletResponse response = serve(range("bytes=90-"));
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 90-99/100");
+        assertThat(response.getContentAsByteArray()).isEqualTo(Arrays.copyOfRange(content, 90, 100));
+    }
+
+    @Test
+    void servesASuffixRange() throws Exception {
+        MockHttpServletResponse response = serve(range("bytes=-5"));
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 95-99/100");
+        assertThat(response.getContentAsByteArray()).isEqualTo(Arrays.copyOfRange(content, 95, 100));
+    }
+
+    @Test
+    void clampsARangeEndingPastTheFile() throws Exception {
+        MockHttpServletResponse response = serve(range("bytes=50-1000"));
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 50-99/100");
+        assertThat(response.getContentAsByteArray()).hasSize(50);
+    }
+
+    @Test
+    void answers416ToARangeStartingPastTheFile() throws Exception {
+        MockHttpServletResponse response = serve(range("bytes=100-"));
+
+        assertThat(response.getStatus()).isEqualTo(416);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */100");
+        assertThat(response.getContentAsByteArray()).isEmpty();
+    }
+
+    @Test
+    void answers416ToAnInvertedRange() throws Exception {
+        MockHttpServletResponse response = serve(range("bytes=20-10"));
+
+        assertThat(response.getStatus()).isEqualTo(416);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */100");
+    }
+
+    @Test
+    void servesTheWholeFileForSeveralRanges() throws Exception {
+        MockHttpServletResponse response = serve(range("bytes=0-1,5-6"));
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isNull();
+        assertThat(response.getContentAsByteArray()).isEqualTo(content);
+    }
+
+    @Test
+    void honoursIfRangeWithTheCurrentETag() throws Exception {
+        String eTag = serve(new MockHttpServletRequest("GET", "/")).getHeader(HttpHeaders.ETAG);
+        MockHttpServletRequest request = range("bytes=0-9");
+        request.addHeader(HttpHeaders.IF_RANGE, eTag);
+
+        MockHttpServletResponse response = serve(request);
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getContentAsByteArray()).isEqualTo(Arrays.copyOfRange(content, 0, 10));
+    }
+
+    @Test
+    void ignoresTheRangeWhenIfRangeNamesAnotherETag() throws Exception {
+        MockHttpServletRequest request = range("bytes=0-9");
+        request.addHeader(HttpHeaders.IF_RANGE, "\"stale\"");
+
+        MockHttpServletResponse response = serve(request);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isNull();
+        assertThat(response.getContentAsByteArray()).isEqualTo(content);
+    }
+
+    @Test
+    void honoursIfRangeWithTheLastModifiedDate() throws Exception {
+        MockHttpServletRequest request = range("bytes=0-9");
+        request.addHeader(HttpHeaders.IF_RANGE, httpDate(MODIFIED));
+
+        assertThat(serve(request).getStatus()).isEqualTo(206);
+    }
+
+    @Test
+    void ignoresTheRangeWhenIfRangeNamesAnotherDate() throws Exception {
+        MockHttpServletRequest request = range("bytes=0-9");
+        request.addHeader(HttpHeaders.IF_RANGE, httpDate(MODIFIED.minusSeconds(60)));
+
+        MockHttpServletResponse response = serve(request);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentAsByteArray()).isEqualTo(content);
+    }
+
+    @Test
+    void headAnswersTheRangeLengthWithoutABody() throws Exception {
+        MockHttpServletRequest request = range("bytes=10-19");
+        request.setMethod("HEAD");
+
+        MockHttpServletResponse response = serve(request);
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getContentLengthLong()).isEqualTo(10);
+        assertThat(response.getContentAsByteArray()).isEmpty();
+    }
+
+    @Test
+    void servesRangesFromCachedBytes() throws Exception {
+        when(imageVariantService.variantKey(HASHED, null, null, null)).thenReturn(HASHED);
+        CachedMedia cached = new CachedMedia(HASHED, ByteBuffer.wrap(content).asReadOnlyBuffer(), MediaType.IMAGE_PNG,
+                "\"" + "a".repeat(64) + "\"", MODIFIED.toEpochMilli());
+        when(hotMediaCache.get(HASHED)).thenReturn(cached);
+
+        MockHttpServletRequest first = range("bytes=10-19");
+        MockHttpServletResponse firstResponse = new MockHttpServletResponse();
+        mediaService.serve(HASHED, null, null, null, first, firstResponse);
+        MockHttpServletResponse secondResponse = new MockHttpServletResponse();
+        mediaService.serve(HASHED, null, null, null, range("bytes=-5"), secondResponse);
+
+        assertThat(firstResponse.getStatus()).isEqualTo(206);
+        assertThat(firstResponse.getContentAsByteArray()).isEqualTo(Arrays.copyOfRange(content, 10, 20));
+        // The cached buffer is shared, a range served from it must not move it for the next response
+        assertThat(secondResponse.getContentAsByteArray()).isEqualTo(Arrays.copyOfRange(content, 95, 100));
+        assertThat(cached.bytes().position()).isZero();
+    }
+
+    private MockHttpServletResponse serve(MockHttpServletRequest request) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        mediaService.serve(NAME, null, null, null, request, response);
+        return response;
+    }
+
+    private static MockHttpServletRequest range(String range) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/");
+        request.addHeader(HttpHeaders.RANGE, range);
+        return request;
+    }
+
+    private static String httpDate(Instant instant) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(instant.atZone(ZoneOffset.UTC));
+    }
+
+    // A PNG signature followed by distinct filler bytes, enough for the content type sniffing
+    private static byte[] png(int length) {
+        byte[] bytes = new byte[length];
+        byte[] signature = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+        for (int i = 0; i < length; i++) bytes[i] = (byte) i;
+        System.arraycopy(signature, 0, bytes, 0, signature.length);
+        return bytes;
+    }
+}
@@ -0,0 +1,46 @@
+package com.booksen.api.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OffsetCursorTest {
+
+    @Test
+    void roundTrips() {
+        String encoded = new OffsetCursor(40).encode();
+
+        assertThat(encoded).matches("[A-Za-z0-9_-]+");
+        assertThat(OffsetCursor.decode(encoded)).isEqualTo(40);
+    }
+
+    @Test
+    void treatsMissingCursorAsFirstPage() {
+        assertThat(OffsetCursor.decode(null)).isZero();
+        assertThat(OffsetCursor.decode("")).isZero();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"offset:-20", "offset:forty", "offset:", "40", "page:40", "offset:99999999999"})
+    void rejectsTamperedContent(String raw) {
+        String tampered = Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+
+        assertThatThrownBy(() -> OffsetCursor.decode(tampered))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid cursor");
+    }
+
+    @Test
+    void doesNotAcceptAPageCursor() {
+        String pageCursor = new PageCursor(LocalDateTime.of(2024, 1, 1, 0, 0, 1), "6650a1b2c3d4e5f6a7b8c9d0").encode();
+
+        assertThatThrownBy(() -> OffsetCursor.decode(pageCursor)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
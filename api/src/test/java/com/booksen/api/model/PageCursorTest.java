@@ -0,0 +1,63 @@
+package com.booksen.api.model;
+
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PageCursorTest {
+
+    @Test
+    void roundTrips() {
+        PageCursor cursor = new PageCursor(LocalDateTime.of(2024, 5, 17, 10, 30, 15, 123_000_000), new ObjectId().toHexString());
+
+        String encoded = cursor.encode();
+
+        assertThat(encoded).matches("[A-Za-z0-9_-]+");
+        assertThat(PageCursor.decode(encoded)).isEqualTo(cursor);
+    }
+
+    @Test
+    void roundTripsWholeSeconds() {
+        // LocalDateTime.toString drops the seconds when they are zero
+        PageCursor cursor = new PageCursor(LocalDateTime.of(2024, 5, 17, 10, 30), new ObjectId().toHexString());
+
+        assertThat(PageCursor.decode(cursor.encode())).isEqualTo(cursor);
+    }
+
+    @Test
+    void treatsMissingCursorAsFirstPage() {
+        assertThat(PageCursor.decode(null)).isNull();
+        assertThat(PageCursor.decode(" ")).isNull();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "2024-05-17T10:30:15|not-an-object-id",
+            "yesterday|6650a1b2c3d4e5f6a7b8c9d0",
+            "2024-05-17T10:30:15",
+            "2024-05-17T10:30:15|6650a1b2c3d4e5f6a7b8c9d0|extra",
+            "|6650a1b2c3d4e5f6a7b8c9d0"
+    })
+    void rejectsTamperedContent(String raw) {
+        String tampered = Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+
+        assertThatThrownBy(() -> PageCursor.decode(tampered))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid cursor");
+    }
+
+    @Test
+    void rejectsSomethingThatIsNotBase64() {
+        assertThatThrownBy(() -> PageCursor.decode("%%%not base64"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid cursor");
+    }
+}